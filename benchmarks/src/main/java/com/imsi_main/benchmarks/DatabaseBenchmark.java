@@ -0,0 +1,108 @@
+package com.imsi_main.benchmarks;
+
+import com.imsi_main.database.Database;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Database.getImsi once per MSISDN against Database.getImsis in batches, on an embedded
+ * H2 active_msisdn_list. Half of the looked up MSISDNs have a row. The embedded database
+ * has no network round trip, so the gap in production is larger than measured here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseBenchmark {
+
+    private static final String URL = "jdbc:h2:mem:active_msisdn_list;DB_CLOSE_DELAY=-1";
+    private static final int LOOKUPS = 5000;
+
+    @Param({"1000000"})
+    public int tableRows;
+
+    @Param({"100", "500", "1000"})
+    public int batchSize;
+
+    private Connection keepAlive;
+    private Database database;
+    private final List<String> msisdns = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        keepAlive = DriverManager.getConnection(URL, "sa", "");
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS active_msisdn_list");
+            statement.execute("CREATE TABLE active_msisdn_list (msisdn VARCHAR(20) PRIMARY KEY, imsi VARCHAR(20))");
+        }
+        keepAlive.setAutoCommit(false);
+        try (PreparedStatement insert = keepAlive.prepareStatement("INSERT INTO active_msisdn_list VALUES (?, ?)")) {
+            for (int i = 0; i < tableRows; i++) {
+                insert.setString(1, SyntheticData.delMsisdn(2 * i + 1));
+                insert.setString(2, SyntheticData.imsi(i));
+                insert.addBatch();
+                if (i % 10000 == 9999) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        keepAlive.commit();
+
+        // Odd del rows are the ones in the table
+        for (int i = 0; i < LOOKUPS; i++) {
+            msisdns.add(SyntheticData.delMsisdn(2 * (int) ((long) i * tableRows / LOOKUPS) + i % 2));
+        }
+        database = new Database(URL, "sa", "", batchSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        database.close();
+        keepAlive.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int single() throws IOException {
+        int found = 0;
+        for (String msisdn : msisdns) {
+            if (database.getImsi(msisdn) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int batched() throws IOException {
+        Map<String, String> imsis = database.getImsis(msisdns);
+        return imsis.size();
+    }
+}
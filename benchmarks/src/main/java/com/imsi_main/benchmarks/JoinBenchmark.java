@@ -0,0 +1,161 @@
+package com.imsi_main.benchmarks;
+
+import com.imsi_main.database.ImsiLookup;
+import com.imsi_main.join.MsisdnIndex;
+import com.imsi_main.join.SortMergeJoin;
+import com.imsi_main.util.CSVReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The del file to add file MSISDN join. Single lookups compare the original linear scan
+ * over the parsed add file with the index; a full scan join is out of reach at these
+ * sizes, so it is measured per lookup over a sample of del MSISDNs. Building the index
+ * and the sort-merge join are measured over the whole files.
+ */
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class JoinBenchmark {
+
+    private static final int SAMPLE = 1000;
+
+    private static final ImsiLookup NO_DATABASE = new ImsiLookup() {
+        @Override
+        public String getImsi(String msisdn) {
+            return null;
+        }
+
+        @Override
+        public Map<String, String> getImsis(Collection<String> msisdns) {
+            return Collections.emptyMap();
+        }
+    };
+
+    @State(Scope.Benchmark)
+    public static class Files {
+        @Param({"1000000", "10000000", "50000000"})
+        public int rows;
+
+        File addFile;
+        File delFile;
+        Properties properties;
+        String[] sample = new String[SAMPLE];
+
+        @Setup
+        public void setup() throws IOException {
+            addFile = SyntheticData.addFile(rows);
+            delFile = SyntheticData.delFile(rows);
+            properties = SyntheticData.properties();
+            // Spread the sample over the whole del file so scans do not only hit the front of the add file
+            for (int i = 0; i < SAMPLE; i++) {
+                sample[i] = SyntheticData.delMsisdn((int) ((long) i * rows / SAMPLE));
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ParsedAddFile {
+        List<String[]> lines;
+
+        @Setup
+        public void setup(Files files) throws IOException {
+            lines = CSVReader.readCSV(files.addFile);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Index {
+        MsisdnIndex newImsiIndex;
+
+        @Setup
+        public void setup(Files files) throws IOException {
+            newImsiIndex = buildIndex(files);
+        }
+    }
+
+    // The lookup FileProcessor did before the index: first add file row with the MSISDN in column 2
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @OperationsPerInvocation(SAMPLE)
+    public int scanLookup(Files files, ParsedAddFile addFile) {
+        int found = 0;
+        for (String msisdn : files.sample) {
+            for (String[] line : addFile.lines) {
+                if (line.length > 2 && line[2].equals(msisdn)) {
+                    found++;
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @OperationsPerInvocation(SAMPLE)
+    public int indexLookup(Files files, Index index) {
+        int found = 0;
+        for (String msisdn : files.sample) {
+            if (index.newImsiIndex.get(msisdn) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public MsisdnIndex indexBuild(Files files) throws IOException {
+        return buildIndex(files);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long sortMergeJoin(Files files) throws IOException {
+        long[] joined = {0};
+        try (SortMergeJoin join = new SortMergeJoin(SyntheticData.dataDir(), Runtime.getRuntime().maxMemory() / 4)) {
+            CSVReader.forEachRow(files.addFile, files.properties, join::addAddRow);
+            CSVReader.forEachRow(files.delFile, files.properties, row -> {
+                if (!row.fieldEquals(0, "Customer Account ID")) {
+                    join.addDelRow(row.get(1), row.get(8));
+                }
+            });
+            join.join(NO_DATABASE, 500, (msisdn, delDate, oldImsi, newImsi) -> {
+                if (newImsi != null) {
+                    joined[0]++;
+                }
+            });
+        }
+        return joined[0];
+    }
+
+    private static MsisdnIndex buildIndex(Files files) throws IOException {
+        MsisdnIndex index = new MsisdnIndex(2, 4);
+        CSVReader.forEachRow(files.addFile, files.properties, index::add);
+        return index;
+    }
+}
@@ -0,0 +1,79 @@
+package com.imsi_main.benchmarks;
+
+import com.imsi_main.util.CSVReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+// Whole add file reads: the legacy readCSV against the streaming and mapped tokenizers
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"1000000", "10000000", "50000000"})
+    public int rows;
+
+    private File addFile;
+    private Properties stream;
+    private Properties mmap;
+
+    @Setup
+    public void setup() throws IOException {
+        addFile = SyntheticData.addFile(rows);
+        stream = SyntheticData.properties();
+        mmap = SyntheticData.properties();
+        mmap.setProperty("csv.readMode", "mmap");
+    }
+
+    @Benchmark
+    public int readCSV() throws IOException {
+        List<String[]> lines = CSVReader.readCSV(addFile);
+        return lines.size();
+    }
+
+    // Decodes every field, like readCSV does
+    @Benchmark
+    public long streamAllFields(Blackhole blackhole) throws IOException {
+        return CSVReader.forEachRow(addFile, stream, row -> {
+            for (int i = 0; i < row.size(); i++) {
+                blackhole.consume(row.get(i));
+            }
+        });
+    }
+
+    // Touches only the key columns, the way the join reads the file
+    @Benchmark
+    public long streamKeyColumns(Blackhole blackhole) throws IOException {
+        return CSVReader.forEachRow(addFile, stream, row -> {
+            blackhole.consume(row.encodeNumeric(2));
+            blackhole.consume(row.encodeNumeric(4));
+        });
+    }
+
+    @Benchmark
+    public long mmapKeyColumns(Blackhole blackhole) throws IOException {
+        return CSVReader.forEachRow(addFile, mmap, row -> {
+            blackhole.consume(row.encodeNumeric(2));
+            blackhole.consume(row.encodeNumeric(4));
+        });
+    }
+}
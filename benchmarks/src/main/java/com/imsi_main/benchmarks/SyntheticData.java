@@ -0,0 +1,114 @@
+package com.imsi_main.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Synthetic hlr_dump and Exp_Balance_ files shaped like the operator feeds. Files are
+ * generated once per row count into bench.dataDir (default target/bench-data) and reused
+ * by later runs, since the 50M row files take minutes to write.
+ *
+ * Add file MSISDNs are unique; half of the del file MSISDNs are in the add file and the
+ * other half are not, so both the add file lookups and the database fallback get traffic.
+ */
+final class SyntheticData {
+
+    static final String DATE = "20240101";
+    static final String ADD_HEADER = "CREATED_DATE,SUBS_ID,MSISDN,ICCID,IMSI";
+    static final String DEL_HEADER = "Customer Account ID,MSISDN,SUSBCRIBER TYPE,EXPIRED DATE TIME,LAST TOPUP,LAST TOPUP DATE TIME,REMAINING BALANCE,Currency,Delete Date Time,OFFER_NAME,BUS_TYPE";
+
+    private static final long ADD_MSISDN_BASE = 85510000000L;
+    private static final long MISS_MSISDN_BASE = 85590000000L;
+    private static final long IMSI_BASE = 456060000000000L;
+
+    private SyntheticData() {
+    }
+
+    static File addFile(int rows) throws IOException {
+        return generate("hlr_dump_" + DATE + "_" + rows + ".csv", writer -> {
+            writer.write(ADD_HEADER);
+            writer.newLine();
+            for (int i = 0; i < rows; i++) {
+                writer.write("2023-" + month(i) + "-15 10:00:00," + (ADD_MSISDN_BASE + (i + rows / 2) % rows) + ","
+                        + addMsisdn(i) + ",89855060" + (10000000000L + i) + "," + (IMSI_BASE + i));
+                writer.newLine();
+            }
+        });
+    }
+
+    static File delFile(int rows) throws IOException {
+        return generate("Exp_Balance_" + DATE + "_" + rows + ".csv", writer -> {
+            writer.write(DEL_HEADER);
+            writer.newLine();
+            for (int i = 0; i < rows; i++) {
+                writer.write((1000000 + i) + "," + delMsisdn(i) + ",PREPAID,2024-01-01 00:00:00,1.00,2023-" + month(i)
+                        + "-01 08:00:00,0.00,USD,2024-01-01 02:00:00,Smart Basic,B2C");
+                writer.newLine();
+            }
+        });
+    }
+
+    static String addMsisdn(int i) {
+        return Long.toString(ADD_MSISDN_BASE + i);
+    }
+
+    // Even rows hit the add file, odd rows only exist in the database (or nowhere)
+    static String delMsisdn(int i) {
+        return Long.toString(i % 2 == 0 ? ADD_MSISDN_BASE + i : MISS_MSISDN_BASE + i);
+    }
+
+    static String imsi(int i) {
+        return Long.toString(IMSI_BASE + i);
+    }
+
+    // Settings the application reads, matching config/process.properties
+    static Properties properties() {
+        Properties properties = new Properties();
+        properties.setProperty("file.separator", ",");
+        properties.setProperty("header.addFile", ADD_HEADER);
+        properties.setProperty("header.delFile", DEL_HEADER);
+        properties.setProperty("addFilePath.msisdn", "2");
+        properties.setProperty("addFilePath.imsi", "4");
+        properties.setProperty("addFilePath.created_date", "0");
+        properties.setProperty("delFilePath.msisdn", "1");
+        properties.setProperty("delFilePath.deleted_date", "8");
+        properties.setProperty("csv.readMode", "stream");
+        return properties;
+    }
+
+    static Path dataDir() throws IOException {
+        Path dir = Paths.get(System.getProperty("bench.dataDir", "target/bench-data"));
+        Files.createDirectories(dir);
+        return dir;
+    }
+
+    private static String month(int i) {
+        int month = i % 12 + 1;
+        return month < 10 ? "0" + month : Integer.toString(month);
+    }
+
+    private interface Content {
+        void write(BufferedWriter writer) throws IOException;
+    }
+
+    // Written under a temporary name first so an interrupted run never leaves a short file behind
+    private static File generate(String name, Content content) throws IOException {
+        Path file = dataDir().resolve(name);
+        if (Files.exists(file)) {
+            return file.toFile();
+        }
+        Path temp = dataDir().resolve(name + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            content.write(writer);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return file.toFile();
+    }
+}
@@ -0,0 +1,51 @@
+package com.imsi_main.benchmarks;
+
+import com.imsi_main.validation.FileValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Header, empty key and duplicate key checks over the whole add file
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ValidationBenchmark {
+
+    @Param({"1000000", "10000000", "50000000"})
+    public int rows;
+
+    private File addFile;
+    private FileValidator validator;
+
+    @Setup
+    public void setup() throws IOException {
+        addFile = SyntheticData.addFile(rows);
+        validator = new FileValidator(SyntheticData.properties());
+    }
+
+    @Benchmark
+    public boolean validateContents() {
+        return validator.validateContents(addFile, "2", "4", "0");
+    }
+
+    // Header and contents in the single pass processing uses
+    @Benchmark
+    public boolean validateAddFile() {
+        return validator.validateAddFile(addFile);
+    }
+}
@@ -1,20 +1,42 @@
 package com.imsi_main;
 
+import com.imsi_main.config.PasswordDecryptor;
+import com.imsi_main.config.PasswordDecryptors;
 import com.imsi_main.fileProcessor.FileProcessor;
 
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Main {
 
     private static final Logger logger = Logger.getLogger(Main.class.getName());
 
+    // Training run for the AppCDS archive built by the appcds profile
+    private static final String ARCHIVE_CLASSES = "--archive-classes";
+
     public static void main(String[] args) {
+        long mainStart = System.nanoTime();
+        if (args.length == 1 && args[0].equals(ARCHIVE_CLASSES)) {
+            loadApplicationClasses();
+            return;
+        }
         if (args.length < 2) {
             logger.severe("Usage: java -jar your-jar-file.jar <> <db-properties-file-path>");
             return;
@@ -25,6 +47,7 @@ public class Main {
 
         Properties processProperties = new Properties();
         Properties dbProperties = new Properties();
+        long decryptNanos;
 
         try (FileInputStream processInput = new FileInputStream(processPropertiesPath);
              FileInputStream dbInput = new FileInputStream(dbPropertiesPath)) {
@@ -33,39 +56,80 @@ public class Main {
             dbProperties.load(dbInput);
 
             // Decrypt the database password
-            String encryptedPassword = dbProperties.getProperty("spring.datasource.password");
-            String decryptedPassword = getPassword(processProperties.getProperty("passwordDecryptor"), encryptedPassword);
+            long decryptStart = System.nanoTime();
+            logger.info("Decrypting Password");
+            PasswordDecryptor decryptor = PasswordDecryptors.create(processProperties);
+            String decryptedPassword = decryptor.decrypt(dbProperties.getProperty("spring.datasource.password"));
+            decryptNanos = System.nanoTime() - decryptStart;
+            logger.fine("Password decrypted by " + decryptor);
 
             // Replace the encrypted password with the decrypted password
             dbProperties.setProperty("spring.datasource.password", decryptedPassword);
 
         } catch (IOException e) {
-            logger.severe("Failed to load properties file: " + e.getMessage());
+            logger.severe("Failed to load properties or decrypt the password: " + e.getMessage());
             return;
         }
 
+        logger.info(String.format("Startup: %d ms until main, %d ms in main, of which %d ms decrypting the password",
+                jvmStartMillis(mainStart), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mainStart), TimeUnit.NANOSECONDS.toMillis(decryptNanos)));
+
         FileProcessor fileProcessor = new FileProcessor();
         fileProcessor.processFiles(processProperties, dbProperties);
     }
 
-    private static String getPassword(final String passwordDecryptor,final String encryptedPassword) {
-        String passwordDecryptorNew = passwordDecryptor.replace("${APP_HOME}", System.getenv("APP_HOME"));
-        logger.info("Decrypting Password");
-        String line;
-        String response = null;
+    // Time from process start to main(), i.e. JVM startup and class loading before our code runs
+    private static long jvmStartMillis(long mainStart) {
+        return ProcessHandle.current().info().startInstant()
+                .map(start -> Instant.now().toEpochMilli() - start.toEpochMilli() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mainStart))
+                .orElse(-1L);
+    }
+
+    // Loads every class of this application so -XX:ArchiveClassesAtExit puts them in the archive
+    private static void loadApplicationClasses() {
+        List<String> classes;
         try {
-            String cmd = "java -jar " + passwordDecryptorNew + " "+encryptedPassword;
-            logger.fine("cmd to run: " + cmd);
-            Process pro = Runtime.getRuntime().exec(cmd);
-            BufferedReader in = new BufferedReader(new InputStreamReader(pro.getInputStream()));
-            while ((line = in.readLine()) != null) {
-                response = line;
+            Path location = Paths.get(Main.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            classes = Files.isDirectory(location) ? classesInDirectory(location) : classesInJar(location.toFile());
+        } catch (IOException | URISyntaxException e) {
+            logger.severe("Failed to list application classes: " + e.getMessage());
+            return;
+        }
+        int loaded = 0;
+        for (String name : classes) {
+            try {
+                Class.forName(name, false, Main.class.getClassLoader());
+                loaded++;
+            } catch (ClassNotFoundException | LinkageError e) {
+                logger.fine("Not archived: " + name + " (" + e + ")");
             }
-            return response;
-        } catch (Exception e) {
-            logger.severe("Error in getPassword: " + e.getMessage());
-            e.printStackTrace();
-            return null;
         }
+        logger.info("Loaded " + loaded + " of " + classes.size() + " application classes for the class archive");
+    }
+
+    private static List<String> classesInDirectory(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.map(path -> root.relativize(path).toString().replace(File.separatorChar, '/'))
+                    .filter(name -> name.endsWith(".class"))
+                    .map(Main::className)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static List<String> classesInJar(File jar) throws IOException {
+        try (JarFile jarFile = new JarFile(jar)) {
+            List<String> classes = new ArrayList<>();
+            for (Enumeration<JarEntry> entries = jarFile.entries(); entries.hasMoreElements(); ) {
+                String name = entries.nextElement().getName();
+                if (name.endsWith(".class") && !name.endsWith("module-info.class")) {
+                    classes.add(className(name));
+                }
+            }
+            return classes;
+        }
+    }
+
+    private static String className(String entry) {
+        return entry.substring(0, entry.length() - ".class".length()).replace('/', '.');
     }
 }
@@ -0,0 +1,50 @@
+package com.imsi_main.config;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+
+/**
+ * Runs {@code java -jar <decryptor jar> <encrypted password>} and takes the last line it
+ * prints as the password. Costs a second JVM start, so it is only the fallback for
+ * decryptor jars whose classes cannot be called in-process.
+ */
+public class ForkedPasswordDecryptor implements PasswordDecryptor {
+
+    private final String jar;
+
+    public ForkedPasswordDecryptor(String jar) {
+        this.jar = jar;
+    }
+
+    @Override
+    public String decrypt(String encryptedPassword) throws IOException {
+        Process process = new ProcessBuilder("java", "-jar", jar, encryptedPassword)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        String response = null;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                response = line;
+            }
+        }
+        try {
+            int exitCode = process.waitFor();
+            if (exitCode != 0 || response == null) {
+                throw new IOException("Password decryptor " + jar + " exited with " + exitCode + (response == null ? " and no output" : ""));
+            }
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the password decryptor");
+        }
+        return response;
+    }
+
+    @Override
+    public String toString() {
+        return "forked " + jar;
+    }
+}
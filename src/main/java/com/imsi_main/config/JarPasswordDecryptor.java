@@ -0,0 +1,89 @@
+package com.imsi_main.config;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Calls the decryptor jar's own code in this JVM. The jar gets a class loader of its own,
+ * parented to the platform loader so its bundled libraries cannot clash with ours, and
+ * the configured method is looked up once: a public {@code String method(String)}, either
+ * static or on an instance made with the public no-argument constructor.
+ */
+public class JarPasswordDecryptor implements PasswordDecryptor {
+
+    private final String description;
+    private final Object target; // Null for a static method
+    private final Method method;
+
+    private JarPasswordDecryptor(String description, Object target, Method method) {
+        this.description = description;
+        this.target = target;
+        this.method = method;
+    }
+
+    /**
+     * @param className class in the jar; empty for the jar's Main-Class
+     */
+    public static JarPasswordDecryptor load(String jar, String className, String methodName) throws IOException {
+        File file = new File(jar);
+        if (!file.isFile()) {
+            throw new FileNotFoundException("Password decryptor jar not found: " + jar);
+        }
+        if (className.isEmpty()) {
+            className = mainClass(file);
+        }
+        URLClassLoader loader = new URLClassLoader(new URL[]{file.toURI().toURL()}, ClassLoader.getPlatformClassLoader());
+        try {
+            Class<?> type = Class.forName(className, true, loader);
+            Method method = type.getMethod(methodName, String.class);
+            if (method.getReturnType() != String.class) {
+                throw new NoSuchMethodException(className + "." + methodName + "(String) does not return a String");
+            }
+            Object target = Modifier.isStatic(method.getModifiers()) ? null : type.getConstructor().newInstance();
+            return new JarPasswordDecryptor(className + "." + methodName + " from " + jar, target, method);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            loader.close();
+            throw new IOException("Cannot call " + className + "." + methodName + "(String) in " + jar + ": " + e, e);
+        }
+    }
+
+    private static String mainClass(File jar) throws IOException {
+        try (JarFile jarFile = new JarFile(jar)) {
+            Manifest manifest = jarFile.getManifest();
+            String mainClass = manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.MAIN_CLASS);
+            if (mainClass == null) {
+                throw new IOException(jar + " has no Main-Class; set passwordDecryptor.class");
+            }
+            return mainClass;
+        }
+    }
+
+    @Override
+    public String decrypt(String encryptedPassword) throws IOException {
+        try {
+            Object password = method.invoke(target, encryptedPassword);
+            if (password == null) {
+                throw new IOException(description + " returned no password");
+            }
+            return (String) password;
+        } catch (InvocationTargetException e) {
+            throw new IOException(description + " failed: " + e.getCause(), e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IOException(description + " is not accessible", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "in-process " + description;
+    }
+}
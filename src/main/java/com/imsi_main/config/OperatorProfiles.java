@@ -0,0 +1,83 @@
+package com.imsi_main.config;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Splits process.properties into one set of properties per operator. With
+ * {@code operators=SM,CM} each operator starts from the shared properties, takes every
+ * {@code operator.<id>.<key>} as its own {@code <key>} and gets {@code operator=<id>}.
+ * Without {@code operators} the file describes the single operator named by {@code operator}.
+ * <p>
+ * Database, pool, thread, log and metrics settings are read once from the shared
+ * properties; overriding them per operator has no effect.
+ */
+public final class OperatorProfiles {
+
+    private static final String PREFIX = "operator.";
+
+    // Properties that name where an operator's files live; no two operators may share one
+    private static final String[] OWN_PATHS = {
+            "simchangeFileDir", "hlrDeactivationFileDir", "fileProcessedPath", "fileCorruptPath"
+    };
+
+    private OperatorProfiles() {
+    }
+
+    public static List<Properties> load(Properties properties) {
+        String operators = properties.getProperty("operators", "").trim();
+        List<Properties> profiles = new ArrayList<>();
+        if (operators.isEmpty()) {
+            profiles.add(properties);
+            return profiles;
+        }
+        Set<String> ids = new HashSet<>();
+        for (String operator : operators.split(",")) {
+            operator = operator.trim();
+            if (operator.isEmpty()) {
+                continue;
+            }
+            if (!ids.add(operator)) {
+                throw new IllegalArgumentException("Operator " + operator + " is listed twice in operators");
+            }
+            Properties profile = new Properties();
+            profile.putAll(properties);
+            String prefix = PREFIX + operator + ".";
+            for (String key : properties.stringPropertyNames()) {
+                if (key.startsWith(prefix)) {
+                    profile.setProperty(key.substring(prefix.length()), properties.getProperty(key));
+                }
+            }
+            profile.setProperty("operator", operator);
+            profiles.add(profile);
+        }
+        checkSeparate(profiles);
+        return profiles;
+    }
+
+    // Operators sharing an input or output location would pick up or overwrite each other's files
+    private static void checkSeparate(List<Properties> profiles) {
+        Map<String, String> owners = new HashMap<>();
+        for (Properties profile : profiles) {
+            String operator = profile.getProperty("operator");
+            claim(owners, operator, "add files", profile.getProperty("addFilePath") + "/" + profile.getProperty("addFileNamePrefix"));
+            claim(owners, operator, "del files", profile.getProperty("delFilePath") + "/" + profile.getProperty("delFileNamePrefix"));
+            for (String key : OWN_PATHS) {
+                claim(owners, operator, key, profile.getProperty(key));
+            }
+            claim(owners, operator, "checkpoint.dir", profile.getProperty("checkpoint.dir", profile.getProperty("fileProcessedPath")));
+        }
+    }
+
+    private static void claim(Map<String, String> owners, String operator, String what, String location) {
+        String owner = owners.putIfAbsent(what + "=" + location, operator);
+        if (owner != null && !owner.equals(operator)) {
+            throw new IllegalArgumentException("Operators " + owner + " and " + operator + " share " + what + " " + location);
+        }
+    }
+}
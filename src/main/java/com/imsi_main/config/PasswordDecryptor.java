@@ -0,0 +1,12 @@
+package com.imsi_main.config;
+
+import java.io.IOException;
+
+/**
+ * Turns the encrypted spring.datasource.password from db.properties into the plain one.
+ * {@link PasswordDecryptors#create} picks the implementation from the process properties.
+ */
+public interface PasswordDecryptor {
+
+    String decrypt(String encryptedPassword) throws IOException;
+}
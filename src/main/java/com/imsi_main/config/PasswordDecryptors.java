@@ -0,0 +1,68 @@
+package com.imsi_main.config;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Chooses the password decryptor from {@code passwordDecryptor.mode}:
+ * <ul>
+ *     <li>{@code inprocess}: {@link JarPasswordDecryptor} on {@code passwordDecryptor.class}
+ *     (default: the jar's Main-Class) and {@code passwordDecryptor.method} (default: decrypt)</li>
+ *     <li>{@code fork}: {@link ForkedPasswordDecryptor}, the old {@code java -jar} call</li>
+ *     <li>{@code auto} (default): in-process, falling back to the fork when the jar's class
+ *     cannot be loaded or its method fails</li>
+ * </ul>
+ */
+public final class PasswordDecryptors {
+
+    private static final Logger logger = Logger.getLogger(PasswordDecryptors.class.getName());
+
+    private PasswordDecryptors() {
+    }
+
+    public static PasswordDecryptor create(Properties properties) throws IOException {
+        String jar = properties.getProperty("passwordDecryptor", "");
+        String appHome = System.getenv("APP_HOME");
+        if (appHome != null) {
+            jar = jar.replace("${APP_HOME}", appHome);
+        }
+        String mode = properties.getProperty("passwordDecryptor.mode", "auto");
+        PasswordDecryptor fork = new ForkedPasswordDecryptor(jar);
+        if (mode.equals("fork")) {
+            return fork;
+        }
+
+        PasswordDecryptor inProcess;
+        try {
+            inProcess = JarPasswordDecryptor.load(jar,
+                    properties.getProperty("passwordDecryptor.class", ""),
+                    properties.getProperty("passwordDecryptor.method", "decrypt"));
+        } catch (IOException e) {
+            if (mode.equals("inprocess")) {
+                throw e;
+            }
+            logger.warning(e.getMessage() + "; falling back to a forked decryptor");
+            return fork;
+        }
+        if (mode.equals("inprocess")) {
+            return inProcess;
+        }
+        return new PasswordDecryptor() {
+            @Override
+            public String decrypt(String encryptedPassword) throws IOException {
+                try {
+                    return inProcess.decrypt(encryptedPassword);
+                } catch (IOException e) {
+                    logger.warning(e.getMessage() + "; falling back to a forked decryptor");
+                    return fork.decrypt(encryptedPassword);
+                }
+            }
+
+            @Override
+            public String toString() {
+                return inProcess + ", " + fork + " as fallback";
+            }
+        };
+    }
+}
@@ -0,0 +1,148 @@
+package com.imsi_main.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Fixed-size pool of JDBC connections. Connections are opened on demand, checked with
+ * {@link Connection#isValid(int)} when borrowed, and reopened with exponential backoff
+ * when the database is unreachable or a connection has gone stale.
+ * <p>
+ * Once a connect has used up all of its retries, every connect for the next
+ * {@code failFastMillis} fails at once with the same error instead of going through the
+ * backoff again, so callers find out the database is down in milliseconds rather than
+ * each waiting out the full backoff.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(ConnectionPool.class.getName());
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int validationTimeoutSeconds;
+    private final int maxRetries;
+    private final long backoffMillis;
+    private final long failFastMillis;
+
+    private final BlockingQueue<PooledConnection> idle;
+    private final List<PooledConnection> all = new ArrayList<>();
+    private final int size;
+    private volatile boolean closed;
+    private volatile long unavailableUntil;
+    private volatile SQLException lastFailure;
+
+    public ConnectionPool(String url, String user, String password, int size,
+                          int validationTimeoutSeconds, int maxRetries, long backoffMillis, long failFastMillis) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.size = Math.max(1, size);
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.maxRetries = Math.max(0, maxRetries);
+        this.backoffMillis = Math.max(0, backoffMillis);
+        this.failFastMillis = Math.max(0, failFastMillis);
+        this.idle = new ArrayBlockingQueue<>(this.size);
+    }
+
+    public PooledConnection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        PooledConnection pooled = idle.poll();
+        if (pooled == null) {
+            pooled = openSlot();
+        }
+        if (pooled == null) {
+            try {
+                pooled = idle.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection", e);
+            }
+        }
+        try {
+            if (pooled.connection() == null) {
+                pooled.reset(connect());
+            } else if (!pooled.isValid(validationTimeoutSeconds)) {
+                logger.warning("Database connection is no longer valid, reconnecting");
+                pooled.reset(connect());
+            }
+        } catch (SQLException e) {
+            release(pooled);
+            throw e;
+        }
+        return pooled;
+    }
+
+    // Reserves a new slot while the pool is below its size; the connection itself is opened on validation
+    private synchronized PooledConnection openSlot() {
+        if (all.size() >= size) {
+            return null;
+        }
+        PooledConnection pooled = new PooledConnection(this);
+        all.add(pooled);
+        return pooled;
+    }
+
+    void release(PooledConnection pooled) {
+        if (closed) {
+            pooled.closeQuietly();
+        } else {
+            idle.offer(pooled);
+        }
+    }
+
+    private Connection connect() throws SQLException {
+        long delay = backoffMillis;
+        for (int attempt = 0; ; attempt++) {
+            failIfUnavailable();
+            try {
+                return DriverManager.getConnection(url, user, password);
+            } catch (SQLException e) {
+                if (attempt >= maxRetries) {
+                    lastFailure = e;
+                    unavailableUntil = System.currentTimeMillis() + failFastMillis;
+                    logger.severe("Database unreachable after " + (attempt + 1) + " attempts, failing fast for " + failFastMillis + " ms: " + e.getMessage());
+                    throw e;
+                }
+                logger.warning("Failed to connect to the database (attempt " + (attempt + 1) + "), retrying in " + delay + " ms: " + e.getMessage());
+                try {
+                    TimeUnit.MILLISECONDS.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                delay = Math.min(delay * 2, TimeUnit.MINUTES.toMillis(1));
+            }
+        }
+    }
+
+    private void failIfUnavailable() throws SQLException {
+        SQLException failure = lastFailure;
+        if (failure != null && System.currentTimeMillis() < unavailableUntil) {
+            throw new SQLException("Database unreachable: " + failure.getMessage(), failure.getSQLState(), failure);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (PooledConnection pooled : all) {
+            pooled.closeQuietly();
+        }
+        all.clear();
+        idle.clear();
+    }
+}
@@ -1,47 +1,171 @@
 package com.imsi_main.database;
 
+import java.io.IOException;
 import java.sql.*;
+import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.logging.Logger;
 
-public class Database {
+public class Database implements ImsiLookup {
 
     private static final Logger logger = Logger.getLogger(Database.class.getName());
-    private Connection connection;
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final String IMSI_QUERY = "SELECT imsi FROM active_msisdn_list WHERE msisdn = ?";
+
+    private final ConnectionPool pool;
+    private final int batchSize;
+    private final String batchQuery;
 
     public Database(String url, String user, String password) {
+        this(url, user, password, DEFAULT_BATCH_SIZE);
+    }
+
+    public Database(String url, String user, String password, int batchSize) {
+        this(new ConnectionPool(url, user, password, 1, 5, 3, 1000, 60000), batchSize);
+    }
+
+    public Database(ConnectionPool pool, int batchSize) {
+        this.pool = pool;
+        this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+        StringBuilder query = new StringBuilder("SELECT msisdn, imsi FROM active_msisdn_list WHERE msisdn IN (");
+        for (int i = 0; i < this.batchSize; i++) {
+            query.append(i == 0 ? "?" : ",?");
+        }
+        this.batchQuery = query.append(')').toString();
+
+        // Open the first connection up front so a bad configuration shows up at startup
         try {
-            connection = DriverManager.getConnection(url, user, password);
+            pool.borrow().close();
+            logger.info("Connected to the database");
         } catch (SQLException e) {
             logger.severe("Failed to connect to the database: " + e.getMessage());
         }
     }
 
-    public String getImsi(String msisdn) {
-        String imsi = null;
-        String query = "SELECT imsi FROM active_msisdn_list WHERE msisdn = ?"; // Replace 'your_table' with the actual table name
+    @Override
+    public String getImsi(String msisdn) throws IOException {
+        try {
+            return withConnection(connection -> {
+                PreparedStatement stmt = connection.prepare(IMSI_QUERY);
+                stmt.setString(1, msisdn);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next() ? rs.getString("imsi") : null;
+                }
+            });
+        } catch (SQLException e) {
+            throw new IOException("Failed to get IMSI from database: " + e.getMessage(), e);
+        }
+    }
 
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setString(1, msisdn);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    imsi = rs.getString("imsi");
+    // Resolves many MSISDNs with one fixed-size IN query per batch; MSISDNs without a row are left out of the map
+    @Override
+    public Map<String, String> getImsis(Collection<String> msisdns) throws IOException {
+        List<String> keys = new ArrayList<>(new LinkedHashSet<>(msisdns));
+        if (keys.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        try {
+            return withConnection(connection -> {
+                Map<String, String> imsis = new HashMap<>();
+                PreparedStatement stmt = connection.prepare(batchQuery);
+                for (int from = 0; from < keys.size(); from += batchSize) {
+                    int to = Math.min(from + batchSize, keys.size());
+                    // Short batches repeat their last MSISDN so the same statement can be reused
+                    for (int i = 0; i < batchSize; i++) {
+                        stmt.setString(i + 1, keys.get(Math.min(from + i, to - 1)));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        boolean numeric = isNumeric(rs.getMetaData().getColumnType(1));
+                        Map<String, List<String>> requested = new HashMap<>();
+                        for (int i = from; i < to; i++) {
+                            requested.computeIfAbsent(matchKey(keys.get(i), numeric), key -> new ArrayList<>(1)).add(keys.get(i));
+                        }
+                        while (rs.next()) {
+                            List<String> matches = requested.get(matchKey(rs.getString(1), numeric));
+                            if (matches != null) {
+                                for (String msisdn : matches) {
+                                    imsis.putIfAbsent(msisdn, rs.getString(2));
+                                }
+                            }
+                        }
+                    }
                 }
-            }
+                return imsis;
+            });
         } catch (SQLException e) {
-            logger.severe("Failed to get IMSI from database: " + e.getMessage());
+            throw new IOException("Failed to get IMSIs from database: " + e.getMessage(), e);
         }
+    }
 
-        return imsi;
+    // The returned msisdn may be spelled differently from the one asked for: a numeric column drops
+    // leading zeros, and PAD SPACE or case-insensitive collations match trailing spaces and any case.
+    // Both sides are reduced the same way so each row is found under the MSISDNs it was returned for.
+    private static String matchKey(String msisdn, boolean numeric) {
+        String key = msisdn.stripTrailing();
+        if (numeric) {
+            int start = 0;
+            while (start < key.length() - 1 && key.charAt(start) == '0') {
+                start++;
+            }
+            return key.substring(start);
+        }
+        return key.toLowerCase(Locale.ROOT);
     }
 
-    public void close() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
+    private static boolean isNumeric(int sqlType) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Streams the whole table; with MySQL the URL needs useCursorFetch=true for the fetch size to apply
+    public long streamImsis(int fetchSize, BiConsumer<String, String> consumer) throws SQLException {
+        try (PooledConnection connection = pool.borrow();
+             Statement stmt = connection.connection().createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(fetchSize);
+            long rows = 0;
+            try (ResultSet rs = stmt.executeQuery("SELECT msisdn, imsi FROM active_msisdn_list")) {
+                while (rs.next()) {
+                    consumer.accept(rs.getString(1), rs.getString(2));
+                    rows++;
+                }
             }
-        } catch (SQLException e) {
-            logger.severe("Failed to close the database connection: " + e.getMessage());
+            return rows;
         }
     }
-}
 
+    // Runs the query on a pooled connection, retrying once on a fresh connection if it fails mid-run
+    private <T> T withConnection(SqlFunction<T> query) throws SQLException {
+        SQLException failure = null;
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try (PooledConnection connection = pool.borrow()) {
+                try {
+                    return query.apply(connection);
+                } catch (SQLException e) {
+                    connection.invalidate();
+                    failure = e;
+                    logger.warning("Database query failed, retrying on a new connection: " + e.getMessage());
+                }
+            }
+        }
+        throw failure;
+    }
+
+    @FunctionalInterface
+    private interface SqlFunction<T> {
+        T apply(PooledConnection connection) throws SQLException;
+    }
+
+    public void close() {
+        pool.close();
+    }
+}
@@ -0,0 +1,136 @@
+package com.imsi_main.database;
+
+import com.imsi_main.util.LongLongHashMap;
+import com.imsi_main.util.NumericCodec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * MSISDN to IMSI cache in front of one {@link ImsiLookup}, shared by all operators of the
+ * process. Every operator gets a partition of its own, so one operator's lookups never
+ * answer another's, but all partitions draw on one budget of {@code maxEntries}: when it
+ * is exceeded the largest partition is dropped, so the memory used follows the lookups
+ * made rather than the number of operators configured. A partition is also dropped once
+ * it is older than {@code maxAgeMillis}, which bounds how stale a cached IMSI can be.
+ * <p>
+ * MSISDNs that are not in the table are cached too, but only from lookups that succeeded. Entries are NumericCodec-encoded
+ * longs; MSISDNs or IMSIs that are not plain digits are passed through uncached.
+ */
+public class ImsiCache {
+
+    private static final Logger logger = Logger.getLogger(ImsiCache.class.getName());
+    private static final long NOT_FOUND = NumericCodec.NOT_NUMERIC; // Never the encoding of an IMSI
+
+    private final ImsiLookup source;
+    private final long maxEntries;
+    private final long maxAgeMillis;
+    private final AtomicLong entries = new AtomicLong();
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+
+    public ImsiCache(ImsiLookup source, long maxEntries, long maxAgeMillis) {
+        this.source = source;
+        this.maxEntries = maxEntries;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public ImsiLookup partition(String operator) {
+        return partitions.computeIfAbsent(operator, Partition::new);
+    }
+
+    public long size() {
+        return entries.get();
+    }
+
+    private void evictIfFull() {
+        while (entries.get() > maxEntries) {
+            Partition largest = null;
+            for (Partition partition : partitions.values()) {
+                if (largest == null || partition.size() > largest.size()) {
+                    largest = partition;
+                }
+            }
+            if (largest == null || largest.size() == 0) {
+                return;
+            }
+            logger.info("IMSI cache over " + maxEntries + " entries, dropping the " + largest.size() + " entries of " + largest.operator);
+            largest.clear();
+        }
+    }
+
+    private final class Partition implements ImsiLookup {
+
+        private final String operator;
+        private LongLongHashMap imsis = new LongLongHashMap();
+        private long createdMillis = System.currentTimeMillis();
+
+        Partition(String operator) {
+            this.operator = operator;
+        }
+
+        @Override
+        public String getImsi(String msisdn) throws IOException {
+            return getImsis(List.of(msisdn)).get(msisdn);
+        }
+
+        @Override
+        public Map<String, String> getImsis(Collection<String> msisdns) throws IOException {
+            Map<String, String> found = new HashMap<>();
+            List<String> misses = new ArrayList<>();
+            synchronized (this) {
+                if (System.currentTimeMillis() - createdMillis > maxAgeMillis) {
+                    clear();
+                }
+                for (String msisdn : msisdns) {
+                    long key = NumericCodec.encode(msisdn);
+                    long value = key == NumericCodec.NOT_NUMERIC ? LongLongHashMap.NO_VALUE : imsis.get(key);
+                    if (value == LongLongHashMap.NO_VALUE) {
+                        misses.add(msisdn);
+                    } else if (value != NOT_FOUND) {
+                        found.put(msisdn, NumericCodec.decode(value));
+                    }
+                }
+            }
+            if (misses.isEmpty()) {
+                return found;
+            }
+
+            // The lookup runs outside the lock so other chunks of the same operator can use the cache meanwhile.
+            // A failed lookup throws before anything is cached, so a database outage is never remembered as "not found".
+            Map<String, String> looked = source.getImsis(misses);
+            found.putAll(looked);
+            synchronized (this) {
+                int before = imsis.size();
+                for (String msisdn : misses) {
+                    long key = NumericCodec.encode(msisdn);
+                    String imsi = looked.get(msisdn);
+                    long value = imsi == null ? NOT_FOUND : NumericCodec.encode(imsi);
+                    if (key != NumericCodec.NOT_NUMERIC && (imsi == null || value != NumericCodec.NOT_NUMERIC)) {
+                        imsis.put(key, value);
+                    }
+                }
+                entries.addAndGet(imsis.size() - before);
+            }
+            evictIfFull();
+            return found;
+        }
+
+        synchronized int size() {
+            return imsis.size();
+        }
+
+        // A new table rather than LongLongHashMap.clear(), so the memory is actually given back
+        synchronized void clear() {
+            entries.addAndGet(-imsis.size());
+            imsis = new LongLongHashMap();
+            createdMillis = System.currentTimeMillis();
+        }
+    }
+}
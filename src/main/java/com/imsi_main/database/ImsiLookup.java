@@ -0,0 +1,13 @@
+package com.imsi_main.database;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+public interface ImsiLookup {
+
+    String getImsi(String msisdn) throws IOException;
+
+    // MSISDNs that are not found are left out of the returned map; a failed lookup throws rather than finding nothing
+    Map<String, String> getImsis(Collection<String> msisdns) throws IOException;
+}
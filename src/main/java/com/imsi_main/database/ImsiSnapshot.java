@@ -0,0 +1,159 @@
+package com.imsi_main.database;
+
+import com.imsi_main.util.LongLongHashMap;
+import com.imsi_main.util.MappedLongLongTable;
+import com.imsi_main.util.NumericCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Copy of active_msisdn_list kept in a memory-mapped snapshot file, so lookups need no
+ * database round trips. The snapshot is rebuilt from the database when it is older than
+ * the configured max age. Rows whose MSISDN or IMSI is not a plain digit string cannot
+ * be stored; if any were skipped, misses are passed on to the database.
+ */
+public class ImsiSnapshot implements ImsiLookup {
+
+    private static final Logger logger = Logger.getLogger(ImsiSnapshot.class.getName());
+
+    private static final long MAGIC = 0x494D5349534E4150L; // "IMSISNAP"
+    private static final int HEADER_BYTES = 32;
+    private static final long MAX_CAPACITY = 1L << 27; // keeps each mapped table under 2 GB
+
+    private final MappedLongLongTable table;
+    private final long size;
+    private final ImsiLookup fallback;
+
+    private ImsiSnapshot(MappedLongLongTable table, long size, ImsiLookup fallback) {
+        this.table = table;
+        this.size = size;
+        this.fallback = fallback;
+    }
+
+    public static ImsiSnapshot load(Database database, Path file, long maxAgeMillis, int fetchSize) throws IOException, SQLException {
+        if (Files.exists(file) && System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis() <= maxAgeMillis) {
+            try {
+                ImsiSnapshot snapshot = open(file, database);
+                logger.info("Using IMSI snapshot " + file + " with " + snapshot.size + " entries");
+                return snapshot;
+            } catch (IOException e) {
+                logger.warning("Discarding unreadable IMSI snapshot " + file + ": " + e.getMessage());
+            }
+        }
+        build(database, file, fetchSize);
+        return open(file, database);
+    }
+
+    private static void build(Database database, Path file, int fetchSize) throws IOException, SQLException {
+        logger.info("Loading active_msisdn_list into snapshot " + file);
+        long start = System.currentTimeMillis();
+        LongLongHashMap map = new LongLongHashMap();
+        long[] skipped = {0};
+        long rows = database.streamImsis(fetchSize, (msisdn, imsi) -> {
+            long key = NumericCodec.encode(msisdn);
+            long value = NumericCodec.encode(imsi);
+            if (key == NumericCodec.NOT_NUMERIC || value == NumericCodec.NOT_NUMERIC) {
+                skipped[0]++;
+            } else {
+                map.putIfAbsent(key, value);
+            }
+        });
+        if (map.capacity() > MAX_CAPACITY) {
+            throw new IOException("active_msisdn_list is too large for a snapshot: " + map.size() + " entries");
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                    .putLong(MAGIC)
+                    .putLong(map.capacity())
+                    .putLong(map.size())
+                    .putLong(skipped[0]);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            map.writeTables(channel);
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Loaded " + rows + " rows (" + skipped[0] + " not numeric) in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private static ImsiSnapshot open(Path file, Database database) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Snapshot is truncated");
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getLong() != MAGIC) {
+                throw new IOException("Not an IMSI snapshot");
+            }
+            long capacity = header.getLong();
+            long size = header.getLong();
+            long skipped = header.getLong();
+            if (capacity <= 0 || capacity > MAX_CAPACITY || channel.size() != HEADER_BYTES + 16 * capacity) {
+                throw new IOException("Snapshot is corrupt");
+            }
+            // Mappings stay valid after the channel is closed
+            LongBuffer keys = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, 8 * capacity).asLongBuffer();
+            LongBuffer values = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + 8 * capacity, 8 * capacity).asLongBuffer();
+            return new ImsiSnapshot(new MappedLongLongTable(keys, values), size, skipped > 0 ? database : null);
+        }
+    }
+
+    @Override
+    public String getImsi(String msisdn) throws IOException {
+        String imsi = lookup(msisdn);
+        if (imsi == null && fallback != null) {
+            return fallback.getImsi(msisdn);
+        }
+        return imsi;
+    }
+
+    @Override
+    public Map<String, String> getImsis(Collection<String> msisdns) throws IOException {
+        Map<String, String> imsis = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String msisdn : msisdns) {
+            String imsi = lookup(msisdn);
+            if (imsi != null) {
+                imsis.put(msisdn, imsi);
+            } else {
+                misses.add(msisdn);
+            }
+        }
+        if (fallback != null && !misses.isEmpty()) {
+            imsis.putAll(fallback.getImsis(misses));
+        }
+        return imsis;
+    }
+
+    private String lookup(String msisdn) {
+        long key = NumericCodec.encode(msisdn);
+        if (key == NumericCodec.NOT_NUMERIC) {
+            return null;
+        }
+        long value = table.get(key);
+        return value == LongLongHashMap.NO_VALUE ? null : NumericCodec.decode(value);
+    }
+
+    public long size() {
+        return size;
+    }
+}
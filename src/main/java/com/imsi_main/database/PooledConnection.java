@@ -0,0 +1,76 @@
+package com.imsi_main.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Connection borrowed from a {@link ConnectionPool}. Prepared statements are cached per
+ * connection; closing hands the connection back to the pool instead of closing it.
+ */
+public class PooledConnection implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(PooledConnection.class.getName());
+
+    private final ConnectionPool pool;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+    private Connection connection;
+
+    PooledConnection(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    public Connection connection() {
+        return connection;
+    }
+
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement stmt = statements.get(sql);
+        if (stmt == null) {
+            stmt = connection.prepareStatement(sql);
+            statements.put(sql, stmt);
+        }
+        return stmt;
+    }
+
+    // Drops the underlying connection so the next borrow reconnects
+    public void invalidate() {
+        closeQuietly();
+    }
+
+    boolean isValid(int timeoutSeconds) throws SQLException {
+        return connection.isValid(timeoutSeconds);
+    }
+
+    void reset(Connection newConnection) {
+        closeQuietly();
+        connection = newConnection;
+    }
+
+    void closeQuietly() {
+        for (PreparedStatement stmt : statements.values()) {
+            try {
+                stmt.close();
+            } catch (SQLException ignored) {
+                // the connection is being discarded anyway
+            }
+        }
+        statements.clear();
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.fine("Failed to close the database connection: " + e.getMessage());
+            }
+            connection = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.release(this);
+    }
+}
@@ -0,0 +1,163 @@
+package com.imsi_main.fileProcessor;
+
+import com.imsi_main.logging.AsyncAppender;
+import com.imsi_main.metrics.PairMetrics;
+import com.imsi_main.util.CsvValues;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * audit_trail.log in the corrupt folder, with one record per file pair. Records are queued
+ * and written by a background thread, so the processing threads never open or write the
+ * file themselves.
+ * <p>
+ * With {@code audit.format=csv} (the default) a record keeps the original columns
+ * {@code time,statusCode,status,message,processedPath} and appends
+ * {@code runId,addFile,delFile,addRows,delRows,simChange,hlrDeactivation,hlrAdd,hlrDel,seconds}.
+ * With {@code audit.format=json} every record is one JSON object per line that also
+ * carries the per-stage seconds.
+ */
+class AuditTrail implements Closeable {
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final String runId;
+    private final String processedPath;
+    private final AsyncAppender<Entry> appender;
+
+    private static final class Entry {
+        final long millis = System.currentTimeMillis();
+        final String statusCode;
+        final String status;
+        final String message;
+        final String addFile;
+        final String delFile;
+        final PairMetrics pair;
+
+        Entry(String statusCode, String status, String message, String addFile, String delFile, PairMetrics pair) {
+            this.statusCode = statusCode;
+            this.status = status;
+            this.message = message;
+            this.addFile = addFile;
+            this.delFile = delFile;
+            this.pair = pair;
+        }
+    }
+
+    AuditTrail(Properties properties, String runId) throws IOException {
+        this.runId = runId;
+        this.processedPath = properties.getProperty("fileProcessedPath");
+        boolean json = "json".equalsIgnoreCase(properties.getProperty("audit.format", "csv"));
+        this.appender = new AsyncAppender<>("audit-writer",
+                Files.newBufferedWriter(Paths.get(properties.getProperty("fileCorruptPath"), "audit_trail.log"), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND),
+                true,
+                Integer.parseInt(properties.getProperty("audit.bufferRecords", "1024")),
+                Long.parseLong(properties.getProperty("audit.flushMillis", "200")),
+                json ? this::formatJson : this::formatCsv);
+    }
+
+    // Queues the record of a finished pair; only waits if the writer is a full ring behind
+    void record(String statusCode, String status, String message, File addFile, File delFile, PairMetrics pair) {
+        appender.append(new Entry(statusCode, status, message, addFile.getName(), delFile.getName(), pair));
+    }
+
+    private void formatCsv(Entry entry, StringBuilder line) {
+        TIMESTAMP.formatTo(Instant.ofEpochMilli(entry.millis), line);
+        line.append(',').append(entry.statusCode)
+                .append(',').append(entry.status)
+                .append(',');
+        CsvValues.append(entry.message, line);
+        line.append(',').append(processedPath)
+                .append(',').append(runId)
+                .append(',');
+        CsvValues.append(entry.addFile, line);
+        line.append(',');
+        CsvValues.append(entry.delFile, line);
+        PairMetrics pair = entry.pair;
+        line.append(',').append(pair.getAddRows())
+                .append(',').append(pair.getDelRows())
+                .append(',').append(pair.counts().getSimChange())
+                .append(',').append(pair.counts().getHlrDeactivation())
+                .append(',').append(pair.counts().getHlrAdd())
+                .append(',').append(pair.counts().getHlrDel())
+                .append(',').append(seconds(pair.getWallNanos()));
+    }
+
+    private void formatJson(Entry entry, StringBuilder line) {
+        PairMetrics pair = entry.pair;
+        line.append("{\"time\":");
+        appendJson(TIMESTAMP.format(Instant.ofEpochMilli(entry.millis)), line);
+        line.append(",\"runId\":");
+        appendJson(runId, line);
+        line.append(",\"statusCode\":");
+        appendJson(entry.statusCode, line);
+        line.append(",\"status\":");
+        appendJson(entry.status, line);
+        line.append(",\"message\":");
+        appendJson(entry.message, line);
+        line.append(",\"addFile\":");
+        appendJson(entry.addFile, line);
+        line.append(",\"delFile\":");
+        appendJson(entry.delFile, line);
+        line.append(",\"processedPath\":");
+        appendJson(processedPath, line);
+        line.append(",\"rows\":{\"add\":").append(pair.getAddRows())
+                .append(",\"del\":").append(pair.getDelRows())
+                .append(",\"simChange\":").append(pair.counts().getSimChange())
+                .append(",\"hlrDeactivation\":").append(pair.counts().getHlrDeactivation())
+                .append(",\"hlrAdd\":").append(pair.counts().getHlrAdd())
+                .append(",\"hlrDel\":").append(pair.counts().getHlrDel())
+                .append("},\"seconds\":").append(seconds(pair.getWallNanos()))
+                .append(",\"stageSeconds\":{");
+        boolean first = true;
+        for (Map.Entry<String, Long> stage : pair.getStageNanos().entrySet()) {
+            line.append(first ? "" : ",");
+            appendJson(stage.getKey(), line);
+            line.append(':').append(seconds(stage.getValue()));
+            first = false;
+        }
+        line.append("}}");
+    }
+
+    private static void appendJson(String value, StringBuilder line) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e9);
+    }
+
+    // Writes out every queued record before closing the file
+    @Override
+    public void close() throws IOException {
+        appender.close();
+    }
+}
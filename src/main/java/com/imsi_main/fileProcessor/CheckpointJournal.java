@@ -0,0 +1,137 @@
+package com.imsi_main.fileProcessor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Small properties file that records how far processing of an add/del pair got: the
+ * stage, the del file byte offset and the size of every output .part file at that point.
+ * It is replaced atomically on every checkpoint and deleted once the outputs are committed
+ * and the input files moved away, so a pair left in place after its commit is not written twice.
+ * A journal written for different input files (name, size or modification time) is ignored.
+ */
+class CheckpointJournal {
+
+    private static final Logger logger = Logger.getLogger(CheckpointJournal.class.getName());
+
+    enum Stage { STARTED, ADD_DONE, COMMIT }
+
+    private final Path path;
+    private final boolean enabled;
+    private final boolean resumed;
+    private final Properties state;
+
+    private CheckpointJournal(Path path, boolean enabled, boolean resumed, Properties state) {
+        this.path = path;
+        this.enabled = enabled;
+        this.resumed = resumed;
+        this.state = state;
+    }
+
+    static CheckpointJournal open(Path path, boolean enabled, File addFile, File delFile) {
+        Properties expected = new Properties();
+        describe(expected, "addFile", addFile);
+        describe(expected, "delFile", delFile);
+
+        if (enabled && Files.exists(path)) {
+            Properties saved = new Properties();
+            try (InputStream input = new FileInputStream(path.toFile())) {
+                saved.load(input);
+                if (matches(saved, expected)) {
+                    logger.info("Resuming " + addFile.getName() + " / " + delFile.getName() + " from checkpoint at stage "
+                            + saved.getProperty("stage") + ", del file offset " + saved.getProperty("delOffset"));
+                    return new CheckpointJournal(path, true, true, saved);
+                }
+                logger.warning("Ignoring checkpoint " + path + " written for other input files");
+            } catch (IOException | IllegalArgumentException e) {
+                logger.warning("Ignoring unreadable checkpoint " + path + ": " + e.getMessage());
+            }
+        }
+
+        expected.setProperty("timestamp", new SimpleDateFormat("yyyyMMddHHmmss").format(new Date()));
+        expected.setProperty("stage", Stage.STARTED.name());
+        expected.setProperty("delOffset", "0");
+        return new CheckpointJournal(path, enabled, false, expected);
+    }
+
+    private static void describe(Properties properties, String key, File file) {
+        properties.setProperty(key, file.getName());
+        properties.setProperty(key + ".size", String.valueOf(file.length()));
+        properties.setProperty(key + ".modified", String.valueOf(file.lastModified()));
+    }
+
+    private static boolean matches(Properties saved, Properties expected) {
+        for (String key : expected.stringPropertyNames()) {
+            if (!expected.getProperty(key).equals(saved.getProperty(key))) {
+                return false;
+            }
+        }
+        return saved.getProperty("stage") != null;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    boolean isResumed() {
+        return resumed;
+    }
+
+    String getTimestamp() {
+        return state.getProperty("timestamp");
+    }
+
+    Stage getStage() {
+        return Stage.valueOf(state.getProperty("stage"));
+    }
+
+    long getDelOffset() {
+        return Long.parseLong(state.getProperty("delOffset"));
+    }
+
+    long getOutputSize(String output) {
+        return Long.parseLong(state.getProperty("output." + output + ".size", "-1"));
+    }
+
+    void record(Stage stage, long delOffset, Map<String, Long> outputSizes) throws IOException {
+        state.setProperty("stage", stage.name());
+        state.setProperty("delOffset", String.valueOf(delOffset));
+        for (Map.Entry<String, Long> entry : outputSizes.entrySet()) {
+            state.setProperty("output." + entry.getKey() + ".size", String.valueOf(entry.getValue()));
+        }
+        if (!enabled) {
+            return;
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(temp.toFile())) {
+            state.store(output, "Checkpoint, do not edit");
+            output.getFD().sync();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    void delete() {
+        if (enabled) {
+            delete(path);
+        }
+    }
+
+    static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warning("Failed to delete checkpoint " + path + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.imsi_main.fileProcessor;
+
+import com.imsi_main.database.ImsiLookup;
+import com.imsi_main.join.MsisdnIndex;
+import com.imsi_main.metrics.RowCounts;
+import com.imsi_main.util.CSVReader;
+import com.imsi_main.util.CsvRow;
+import com.imsi_main.validation.InvalidFileException;
+import com.imsi_main.validation.RowValidator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits the del file into chunks of rows and classifies each row into sim change,
+ * HLR deactivation and hlr_del output. Chunks run on {@code processing.threads}
+ * workers and their output is written back in file order.
+ */
+public class DelFileClassifier {
+
+    private static final String NEW_LINE = System.lineSeparator();
+
+    private final MsisdnIndex oldImsiIndex;
+    private final MsisdnIndex newImsiIndex;
+    private final ImsiLookup imsiLookup;
+    private final RowValidator validator;
+    private final RowCounts counts;
+    private final ExecutorService workers;
+    private final int threads;
+    private final int chunkRows;
+
+    public DelFileClassifier(MsisdnIndex oldImsiIndex, MsisdnIndex newImsiIndex, ImsiLookup imsiLookup, Properties properties) {
+        this(oldImsiIndex, newImsiIndex, imsiLookup, RowValidator.NONE, new RowCounts(), properties);
+    }
+
+    public DelFileClassifier(MsisdnIndex oldImsiIndex, MsisdnIndex newImsiIndex, ImsiLookup imsiLookup, RowValidator validator,
+                             RowCounts counts, Properties properties) {
+        this(oldImsiIndex, newImsiIndex, imsiLookup, validator, counts, null, properties);
+    }
+
+    // The validator sees every row of the read, header included, before it is classified;
+    // counts receives each chunk's output rows as the chunk is written. Chunks run on the
+    // given workers, shared with other files being classified at the same time, or on a
+    // pool of processing.threads made for this file when workers is null
+    public DelFileClassifier(MsisdnIndex oldImsiIndex, MsisdnIndex newImsiIndex, ImsiLookup imsiLookup, RowValidator validator,
+                             RowCounts counts, ExecutorService workers, Properties properties) {
+        this.oldImsiIndex = oldImsiIndex;
+        this.newImsiIndex = newImsiIndex;
+        this.imsiLookup = imsiLookup;
+        this.validator = validator;
+        this.counts = counts;
+        this.workers = workers;
+        this.threads = Math.max(1, Integer.parseInt(properties.getProperty("processing.threads", "1")));
+        this.chunkRows = Math.max(1, Integer.parseInt(properties.getProperty("processing.chunkRows", "10000")));
+    }
+
+    // Called after each chunk's output has been handed to the writers, in file order
+    public interface ChunkListener {
+        void chunkWritten(long delOffset, int rows) throws IOException;
+    }
+
+    // Up to Delete Date Time, checked here too as the row validator is off with validation.enabled=false
+    static void requireDelFields(CsvRow line, File delFile) throws InvalidFileException {
+        if (line.size() < 9) {
+            throw new InvalidFileException("Expected at least 9 fields but found " + line.size()
+                    + " at line " + line.lineNumber() + " in file: " + delFile.getName());
+        }
+    }
+
+    public void process(File delFile, Properties properties, Writer simChangeWriter, Writer hlrDeacWriter, Writer delHlrWriter) throws IOException {
+        process(delFile, properties, 0, simChangeWriter, hlrDeacWriter, delHlrWriter, (delOffset, rows) -> { });
+    }
+
+    public void process(File delFile, Properties properties, long startOffset, Writer simChangeWriter, Writer hlrDeacWriter,
+                        Writer delHlrWriter, ChunkListener listener) throws IOException {
+        ExecutorService pool = workers != null ? workers : threads > 1 ? Executors.newFixedThreadPool(threads, workerThreads()) : null;
+        Deque<Future<Result>> pending = new ArrayDeque<>();
+        Chunk[] current = {new Chunk(chunkRows)};
+        try {
+            CSVReader.forEachRow(delFile, properties, startOffset, line -> {
+                validator.check(line);
+                if (line.fieldEquals(0, "Customer Account ID")) { // Skip header row
+                    return;
+                }
+                requireDelFields(line, delFile);
+                current[0].add(line.get(1), line.get(8)); // MSISDN, Delete Date Time
+                current[0].endOffset = line.endOffset();
+                if (current[0].isFull()) {
+                    submit(pool, current[0], pending, simChangeWriter, hlrDeacWriter, delHlrWriter, listener);
+                    current[0] = new Chunk(chunkRows);
+                }
+            });
+            validator.finish();
+            if (current[0].size > 0) {
+                submit(pool, current[0], pending, simChangeWriter, hlrDeacWriter, delHlrWriter, listener);
+            }
+            while (!pending.isEmpty()) {
+                await(pending.poll()).writeTo(simChangeWriter, hlrDeacWriter, delHlrWriter, counts, listener);
+            }
+        } finally {
+            if (pool != null && pool != workers) {
+                pool.shutdownNow();
+            }
+            // Chunks still queued after a failure would only take shared workers away from other files
+            for (Future<Result> chunk : pending) {
+                chunk.cancel(true);
+            }
+        }
+    }
+
+    private void submit(ExecutorService pool, Chunk chunk, Deque<Future<Result>> pending, Writer simChangeWriter,
+                        Writer hlrDeacWriter, Writer delHlrWriter, ChunkListener listener) throws IOException {
+        if (pool == null) {
+            classify(chunk).writeTo(simChangeWriter, hlrDeacWriter, delHlrWriter, counts, listener);
+            return;
+        }
+        // Keep a bounded number of chunks in flight and write finished ones in submission order
+        while (pending.size() >= threads * 2) {
+            await(pending.poll()).writeTo(simChangeWriter, hlrDeacWriter, delHlrWriter, counts, listener);
+        }
+        pending.add(pool.submit(() -> classify(chunk)));
+    }
+
+    private Result classify(Chunk chunk) throws IOException {
+        // Look up the chunk's add file misses in the database with one batched call
+        String[] oldImsis = new String[chunk.size];
+        List<String> misses = new ArrayList<>();
+        for (int i = 0; i < chunk.size; i++) {
+            oldImsis[i] = oldImsiIndex.get(chunk.msisdns[i]);
+            if (oldImsis[i] == null) {
+                misses.add(chunk.msisdns[i]);
+            }
+        }
+        Map<String, String> databaseImsis = misses.isEmpty() ? Collections.emptyMap() : imsiLookup.getImsis(misses);
+
+        Result result = new Result(chunk.endOffset, chunk.size);
+        for (int i = 0; i < chunk.size; i++) {
+            String msisdn = chunk.msisdns[i];
+            String delDate = chunk.delDates[i];
+            String oldImsi = oldImsis[i] != null ? oldImsis[i] : databaseImsis.get(msisdn);
+            String newImsi = newImsiIndex.get(msisdn);
+
+            writeRow(msisdn, delDate, oldImsi, newImsi, result.simChange, result.hlrDeactivation, result.hlrDel, result.counts);
+        }
+        return result;
+    }
+
+    // Writes one del row to the outputs it belongs in and counts it; shared by every join strategy
+    public static void writeRow(String msisdn, String delDate, String oldImsi, String newImsi,
+                                Appendable simChange, Appendable hlrDeactivation, Appendable hlrDel, RowCounts counts) throws IOException {
+        if (newImsi != null && oldImsi != null) {
+            simChange.append(newImsi).append(',').append(oldImsi).append(',').append(msisdn).append(',').append(delDate).append(NEW_LINE);
+            counts.simChange();
+        } else {
+            hlrDeactivation.append(delDate).append(',').append(msisdn).append(NEW_LINE); // Assuming Delete Date Time, MSISDN
+            counts.hlrDeactivation();
+        }
+        if (newImsi != null) {
+            hlrDel.append(newImsi).append(',').append(msisdn).append(',').append(delDate).append(NEW_LINE);
+            counts.hlrDel(1);
+        }
+    }
+
+    private static Result await(Future<Result> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while classifying del file rows", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to classify del file rows: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    public static ThreadFactory workerThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "del-classifier-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Chunk {
+        final String[] msisdns;
+        final String[] delDates;
+        int size;
+        long endOffset;
+
+        Chunk(int capacity) {
+            msisdns = new String[capacity];
+            delDates = new String[capacity];
+        }
+
+        void add(String msisdn, String delDate) {
+            msisdns[size] = msisdn;
+            delDates[size] = delDate;
+            size++;
+        }
+
+        boolean isFull() {
+            return size == msisdns.length;
+        }
+    }
+
+    private static final class Result {
+        final StringBuilder simChange = new StringBuilder();
+        final StringBuilder hlrDeactivation = new StringBuilder();
+        final StringBuilder hlrDel = new StringBuilder();
+        final RowCounts counts = new RowCounts();
+        final long endOffset;
+        final int rows;
+
+        Result(long endOffset, int rows) {
+            this.endOffset = endOffset;
+            this.rows = rows;
+        }
+
+        void writeTo(Writer simChangeWriter, Writer hlrDeacWriter, Writer delHlrWriter, RowCounts total, ChunkListener listener) throws IOException {
+            simChangeWriter.append(simChange);
+            hlrDeacWriter.append(hlrDeactivation);
+            delHlrWriter.append(hlrDel);
+            total.add(counts);
+            listener.chunkWritten(endOffset, rows);
+        }
+    }
+}
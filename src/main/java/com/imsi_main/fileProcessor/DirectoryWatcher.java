@@ -0,0 +1,149 @@
+package com.imsi_main.fileProcessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Daemon mode: watches addFilePath and delFilePath and hands over each dated add/del
+ * pair as soon as both files have arrived. Files count as arrived once they have not
+ * been modified for {@code daemon.settleMillis}, so half-copied files are not picked up.
+ * <p>
+ * A pair that fails without being moved, e.g. during a database outage, is queued again
+ * and retried after {@code daemon.retryMillis}, doubling on each further failure up to
+ * {@code daemon.maxRetryMillis}. Later dates are held until it succeeds, so pairs are
+ * still processed in date order.
+ */
+public class DirectoryWatcher {
+
+    private static final Logger logger = Logger.getLogger(DirectoryWatcher.class.getName());
+
+    public interface PairHandler {
+        // False when the pair failed and was left in place to be retried
+        boolean process(FilePair pair);
+    }
+
+    private final Path addDir;
+    private final Path delDir;
+    private final String addPrefix;
+    private final String delPrefix;
+    private final Properties properties;
+    private final long settleMillis;
+    private final long retryMillis;
+    private final long maxRetryMillis;
+    private final FilePairQueue queue = new FilePairQueue();
+    private volatile WatchService watchService;
+    private volatile boolean stopped;
+
+    public DirectoryWatcher(Properties properties) {
+        this.addDir = Paths.get(properties.getProperty("addFilePath")).toAbsolutePath().normalize();
+        this.delDir = Paths.get(properties.getProperty("delFilePath")).toAbsolutePath().normalize();
+        this.addPrefix = properties.getProperty("addFileNamePrefix");
+        this.delPrefix = properties.getProperty("delFileNamePrefix");
+        this.properties = properties;
+        this.settleMillis = Long.parseLong(properties.getProperty("daemon.settleMillis", "5000"));
+        this.retryMillis = Long.parseLong(properties.getProperty("daemon.retryMillis", "60000"));
+        this.maxRetryMillis = Long.parseLong(properties.getProperty("daemon.maxRetryMillis", "1800000"));
+    }
+
+    public void run(PairHandler handler) throws IOException {
+        try (WatchService service = FileSystems.getDefault().newWatchService()) {
+            watchService = service;
+            if (stopped) {
+                return;
+            }
+            register(service, addDir);
+            if (!delDir.equals(addDir)) {
+                register(service, delDir);
+            }
+            // Pick up the backlog once; after this only watch events are used
+            scan(addDir);
+            scan(delDir);
+            logger.info("Watching " + addDir + " and " + delDir + " with " + queue.size() + " files pending");
+            long backoff = 0;
+            long holdUntil = 0;
+
+            while (!stopped) {
+                WatchKey key = service.poll(settleMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    Path dir = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            logger.warning("Watch events overflowed, rescanning " + dir);
+                            scan(dir);
+                        } else {
+                            offer(dir.resolve((Path) event.context()));
+                        }
+                    }
+                    key.reset();
+                }
+                FilePair pair;
+                while (!stopped && System.currentTimeMillis() >= holdUntil && (pair = queue.pollReady(this::isSettled)) != null) {
+                    if (handler.process(pair)) {
+                        backoff = 0;
+                    } else if (!stopped) {
+                        backoff = backoff == 0 ? retryMillis : Math.min(backoff * 2, maxRetryMillis);
+                        holdUntil = System.currentTimeMillis() + backoff;
+                        queue.requeue(pair);
+                        logger.warning("Retrying " + pair + " in " + backoff + " ms, later dates wait for it");
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // stop() was called
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Directory watcher stopped");
+    }
+
+    public void stop() {
+        stopped = true;
+        WatchService service = watchService;
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException e) {
+                logger.warning("Failed to close watch service: " + e.getMessage());
+            }
+        }
+    }
+
+    private void register(WatchService service, Path dir) throws IOException {
+        dir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    private void scan(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                offer(file);
+            }
+        }
+    }
+
+    private void offer(Path file) {
+        String name = file.getFileName().toString();
+        Path dir = file.getParent();
+        if (dir.equals(addDir) && FileProcessor.isInputFile(name, addPrefix, properties)) {
+            queue.offerAdd(file.toFile());
+        } else if (dir.equals(delDir) && FileProcessor.isInputFile(name, delPrefix, properties)) {
+            queue.offerDel(file.toFile());
+        }
+    }
+
+    private boolean isSettled(File file) {
+        return file.isFile() && System.currentTimeMillis() - file.lastModified() >= settleMillis;
+    }
+}
@@ -0,0 +1,34 @@
+package com.imsi_main.fileProcessor;
+
+import java.io.File;
+
+// Add and del files that carry the same yyyyMMdd date in their names
+public class FilePair {
+
+    private final String date;
+    private final File addFile;
+    private final File delFile;
+
+    public FilePair(String date, File addFile, File delFile) {
+        this.date = date;
+        this.addFile = addFile;
+        this.delFile = delFile;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public File getAddFile() {
+        return addFile;
+    }
+
+    public File getDelFile() {
+        return delFile;
+    }
+
+    @Override
+    public String toString() {
+        return date + " (" + addFile.getName() + ", " + delFile.getName() + ")";
+    }
+}
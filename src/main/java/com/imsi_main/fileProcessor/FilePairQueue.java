@@ -0,0 +1,63 @@
+package com.imsi_main.fileProcessor;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+// Pending add and del files sorted by the date in their names, released once both halves of a date are present
+class FilePairQueue {
+
+    private final TreeMap<String, File> addFiles = new TreeMap<>();
+    private final TreeMap<String, File> delFiles = new TreeMap<>();
+
+    void offerAdd(File file) {
+        offer(addFiles, file);
+    }
+
+    void offerDel(File file) {
+        offer(delFiles, file);
+    }
+
+    private void offer(TreeMap<String, File> files, File file) {
+        String date = FileProcessor.extractDateFromFilename(file.getName());
+        if (date != null) {
+            files.putIfAbsent(date, file);
+        }
+    }
+
+    // Puts a pair taken by pollReady back, e.g. to retry it after a failure
+    void requeue(FilePair pair) {
+        addFiles.put(pair.getDate(), pair.getAddFile());
+        delFiles.put(pair.getDate(), pair.getDelFile());
+    }
+
+    // Earliest date whose two files are both ready, or null; files that have disappeared are dropped
+    FilePair pollReady(Predicate<File> ready) {
+        dropMissing(addFiles);
+        dropMissing(delFiles);
+        for (Map.Entry<String, File> entry : addFiles.entrySet()) {
+            File delFile = delFiles.get(entry.getKey());
+            if (delFile != null && ready.test(entry.getValue()) && ready.test(delFile)) {
+                addFiles.remove(entry.getKey());
+                delFiles.remove(entry.getKey());
+                return new FilePair(entry.getKey(), entry.getValue(), delFile);
+            }
+        }
+        return null;
+    }
+
+    private void dropMissing(TreeMap<String, File> files) {
+        Iterator<File> iterator = files.values().iterator();
+        while (iterator.hasNext()) {
+            if (!iterator.next().exists()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    int size() {
+        return addFiles.size() + delFiles.size();
+    }
+}
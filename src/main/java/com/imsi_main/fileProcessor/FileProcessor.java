@@ -1,13 +1,35 @@
 package com.imsi_main.fileProcessor;
 
+import com.imsi_main.config.OperatorProfiles;
+import com.imsi_main.join.DumpDelta;
+import com.imsi_main.join.MsisdnIndex;
+import com.imsi_main.join.SortMergeJoin;
+import com.imsi_main.logging.AsyncLogHandler;
+import com.imsi_main.metrics.MeteredImsiLookup;
+import com.imsi_main.metrics.Metrics;
+import com.imsi_main.metrics.MetricsEndpoints;
+import com.imsi_main.metrics.PairMetrics;
 import com.imsi_main.util.CSVReader;
+import com.imsi_main.util.Compression;
+import com.imsi_main.util.CsvValues;
+import com.imsi_main.util.RowWriter;
 import com.imsi_main.validation.FileValidator;
+import com.imsi_main.validation.InvalidFileException;
+import com.imsi_main.validation.RowValidator;
+import com.imsi_main.database.ConnectionPool;
 import com.imsi_main.database.Database;
+import com.imsi_main.database.ImsiCache;
+import com.imsi_main.database.ImsiLookup;
+import com.imsi_main.database.ImsiSnapshot;
 
 import java.io.*;
 import java.nio.file.*;
-import java.text.SimpleDateFormat;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -15,69 +37,308 @@ import java.util.regex.Pattern;
 public class FileProcessor {
 
     private static final Logger logger = Logger.getLogger(FileProcessor.class.getName());
+    private static final Pattern DATE_PATTERN = Pattern.compile("(\\d{8})");
+    // Rough heap held by both add file lookups per byte of add file
+    private static final double INDEX_BYTES_PER_FILE_BYTE = 1.5;
+    // Rough size of a gzip or zstd dump once decompressed, per compressed byte; numeric CSV compresses well
+    private static final int COMPRESSED_EXPANSION = 10;
+    private static final Set<String> SKIPPED_INPUTS = ConcurrentHashMap.newKeySet();
+    // Per operator
     private FileValidator fileValidator;
+    private ImsiLookup imsiLookup;
+    private AuditTrail auditTrail;
+    // Shared by all operators of the process
     private Database database;
+    private Metrics metrics;
+    private ExecutorService workers;
+    private Path summaryDir;
+    private Thread runThread;
 
     public void processFiles(Properties processProperties, Properties dbProperties) {
-        fileValidator = new FileValidator(processProperties);
-        database = new Database(dbProperties.getProperty("spring.datasource.url"),
+        AsyncLogHandler logHandler = null;
+        try {
+            logHandler = AsyncLogHandler.install(processProperties);
+        } catch (IOException e) {
+            logger.severe("Failed to open the log file, logging synchronously: " + e.getMessage());
+        }
+        try {
+            run(processProperties, dbProperties);
+        } finally {
+            // The log writer is a daemon thread, so whatever it still holds is flushed here on every way out
+            if (logHandler != null) {
+                logHandler.uninstall();
+            }
+        }
+    }
+
+    private void run(Properties processProperties, Properties dbProperties) {
+        List<Properties> profiles;
+        try {
+            profiles = OperatorProfiles.load(processProperties);
+        } catch (IllegalArgumentException e) {
+            logger.severe("Invalid operator profiles: " + e.getMessage());
+            return;
+        }
+        ConnectionPool connectionPool = new ConnectionPool(dbProperties.getProperty("spring.datasource.url"),
                 dbProperties.getProperty("spring.datasource.username"),
-                dbProperties.getProperty("spring.datasource.password"));
+                dbProperties.getProperty("spring.datasource.password"),
+                Integer.parseInt(processProperties.getProperty("db.pool.size", processProperties.getProperty("processing.threads", "1"))),
+                Integer.parseInt(processProperties.getProperty("db.pool.validationTimeoutSeconds", "5")),
+                Integer.parseInt(processProperties.getProperty("db.pool.maxRetries", "5")),
+                Long.parseLong(processProperties.getProperty("db.pool.backoffMillis", "1000")),
+                Long.parseLong(processProperties.getProperty("db.pool.failFastMillis", "60000")));
+        database = new Database(connectionPool, Integer.parseInt(processProperties.getProperty("db.lookup.batchSize", "500")));
         logger.info("Program Started");
+        metrics = new Metrics(processProperties);
+        // By default the run summary goes next to the audit trail, not among the archived input dumps
+        String summaryDirProperty = processProperties.getProperty("metrics.summaryDir", "");
+        summaryDir = Paths.get(summaryDirProperty.isEmpty() ? processProperties.getProperty("fileCorruptPath") : summaryDirProperty);
+        runThread = Thread.currentThread();
+        ImsiLookup lookup = new MeteredImsiLookup(createImsiLookup(processProperties), metrics);
+        ImsiCache cache = createImsiCache(lookup, processProperties);
+        int threads = Integer.parseInt(processProperties.getProperty("processing.threads", "1"));
+        workers = threads > 1 ? Executors.newFixedThreadPool(threads, DelFileClassifier.workerThreads()) : null;
+
+        boolean daemon = Boolean.parseBoolean(processProperties.getProperty("daemon.enabled", "false"));
+        MetricsEndpoints endpoints = daemon ? MetricsEndpoints.start(metrics, processProperties) : null;
+        try {
+            if (profiles.size() == 1) {
+                Properties profile = profiles.get(0);
+                runOperator(profile, cache != null ? cache.partition(profile.getProperty("operator", "")) : lookup);
+            } else {
+                runOperators(profiles, cache, lookup);
+            }
+        } finally {
+            if (endpoints != null) {
+                endpoints.close();
+            }
+            if (workers != null) {
+                workers.shutdownNow();
+            }
+            database.close();
+            writeRunSummary();
+        }
+
+        logger.info("Program Finished");
+    }
 
+    // Every operator runs on a thread and a FileProcessor of its own; the database, the chunk workers,
+    // the metrics and the IMSI cache stay shared
+    private void runOperators(List<Properties> profiles, ImsiCache cache, ImsiLookup lookup) {
+        logger.info("Running " + profiles.size() + " operators");
+        List<Thread> threads = new ArrayList<>();
+        for (Properties profile : profiles) {
+            String operator = profile.getProperty("operator");
+            FileProcessor processor = new FileProcessor();
+            processor.database = database;
+            processor.metrics = metrics;
+            processor.workers = workers;
+            processor.summaryDir = summaryDir;
+            processor.runThread = runThread;
+            ImsiLookup operatorLookup = cache != null ? cache.partition(operator) : lookup;
+            Thread thread = new Thread(() -> processor.runOperator(profile, operatorLookup), "operator-" + operator);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void runOperator(Properties processProperties, ImsiLookup lookup) {
+        fileValidator = new FileValidator(processProperties);
+        imsiLookup = lookup;
+        try {
+            auditTrail = new AuditTrail(processProperties, metrics.getRunId());
+        } catch (IOException e) {
+            logger.severe("Failed to open the audit trail: " + e.getMessage());
+        }
         try {
-            while (true) {
-                File addFile = getFirstFile(processProperties.getProperty("addFilePath"), processProperties.getProperty("addFileNamePrefix"));
-                File delFile = getFirstFile(processProperties.getProperty("delFilePath"), processProperties.getProperty("delFileNamePrefix"));
+            if (Boolean.parseBoolean(processProperties.getProperty("daemon.enabled", "false"))) {
+                runDaemon(processProperties);
+            } else {
+                runOnce(processProperties);
+            }
+        } finally {
+            closeAuditTrail();
+        }
+    }
 
-                if (addFile == null || delFile == null) {
-                    logger.info("No more files to process.");
-                    break;
-                }
+    private void runOnce(Properties processProperties) {
+        int pairThreads = Integer.parseInt(processProperties.getProperty("processing.pairThreads", "1"));
+        // Each delta is taken against the previous day's snapshot, so delta pairs run one at a time in date order
+        if (pairThreads > 1 && deltaEnabled(processProperties)) {
+            logger.warning("hlr.delta.enabled=true processes pairs in date order, ignoring processing.pairThreads=" + pairThreads);
+            pairThreads = 1;
+        }
+        if (pairThreads > 1) {
+            new PairScheduler(this, processProperties, pairThreads).run();
+            return;
+        }
+        while (true) {
+            File addFile = getFirstFile(processProperties.getProperty("addFilePath"), processProperties.getProperty("addFileNamePrefix"), processProperties);
+            File delFile = getFirstFile(processProperties.getProperty("delFilePath"), processProperties.getProperty("delFileNamePrefix"), processProperties);
 
-                if (!validateDate(addFile, delFile)) {
-                    logger.info("Date validation failed.");
-                    updateAuditTrail(processProperties, "501", "FAIL", "Date validation failed.");
-                    moveFileToCorruptFolder(addFile.getPath(), processProperties.getProperty("fileCorruptPath"));
-                    moveFileToCorruptFolder(delFile.getPath(), processProperties.getProperty("fileCorruptPath"));
-                    continue;
-                }
+            if (addFile == null || delFile == null) {
+                logger.info("No more files to process.");
+                break;
+            }
 
-                try {
-                    logger.info("Processing SIM Change and HLR Deactivation");
-                    processSimChangeAndHlrDeactivation(addFile, delFile, processProperties);
-                } catch (IOException e) {
-                    logger.severe("Failed to process files: " + e.getMessage());
-                }
+            // A pair left in place would only be picked again, and later dates must wait for it anyway
+            if (!processPair(addFile, delFile, processProperties)) {
+                break;
+            }
+        }
+    }
+
+    private void runDaemon(Properties processProperties) {
+        DirectoryWatcher watcher = new DirectoryWatcher(processProperties);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            logger.info("Stopping daemon");
+            watcher.stop();
+            try {
+                // Let the pairs in progress finish and the database close before the JVM exits
+                runThread.join(TimeUnit.MINUTES.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "daemon-shutdown"));
+
+        try {
+            watcher.run(pair -> {
+                boolean done = processPair(pair.getAddFile(), pair.getDelFile(), processProperties);
+                // The daemon never finishes a run, so the summary is kept current after every pair
+                writeRunSummary();
+                return done;
+            });
+        } catch (IOException e) {
+            logger.severe("Directory watcher failed: " + e.getMessage());
+        }
+    }
 
-                moveFileToProcessedFolder(addFile.getPath(), processProperties.getProperty("fileProcessedPath"));
-                moveFileToProcessedFolder(delFile.getPath(), processProperties.getProperty("fileProcessedPath"));
+    // False when processing failed and the pair was left in place
+    private boolean processPair(File addFile, File delFile, Properties processProperties) {
+        Boolean valid = processPairContents(addFile, delFile, processProperties);
+        if (valid == null) {
+            return false;
+        }
+        movePair(addFile, delFile, valid, processProperties);
+        return true;
+    }
+
+    /**
+     * Returns false when the pair is invalid and belongs in the corrupt folder, and null when
+     * processing failed, e.g. on a full disk or a database outage. Such a pair stays where it
+     * is so the next run resumes it from its checkpoint. Files are not moved here.
+     */
+    Boolean processPairContents(File addFile, File delFile, Properties processProperties) {
+        PairMetrics pair = metrics.startPair(processProperties.getProperty("operator"), extractDateFromFilename(addFile.getName()));
+        String status = PairMetrics.PROCESSED;
+        String auditCode = "200";
+        String auditMessage = "Processed";
+        try {
+            if (!validateDate(addFile, delFile)) {
+                logger.info("Date validation failed.");
+                status = PairMetrics.INVALID;
+                auditCode = "501";
+                auditMessage = "Date validation failed.";
+                return false;
             }
+
+            try {
+                logger.info("Processing SIM Change and HLR Deactivation");
+                processSimChangeAndHlrDeactivation(addFile, delFile, processProperties, pair);
+            } catch (InvalidFileException e) {
+                logger.info("Content validation failed.");
+                status = PairMetrics.INVALID;
+                auditCode = "502";
+                auditMessage = e.getMessage();
+                return false;
+            } catch (IOException e) {
+                logger.severe("Failed to process files, leaving " + addFile.getName() + " and " + delFile.getName()
+                        + " in place for the next run: " + e.getMessage());
+                status = PairMetrics.FAILED;
+                auditCode = "500";
+                auditMessage = e.getMessage();
+                return null;
+            }
+            return true;
         } finally {
-            database.close();
+            metrics.finishPair(pair, status);
+            if (auditTrail != null) {
+                auditTrail.record(auditCode, auditCode.equals("200") ? "SUCCESS" : "FAIL", auditMessage, addFile, delFile, pair);
+            }
         }
+    }
 
-        logger.info("Program Finished");
+    void movePair(File addFile, File delFile, boolean valid, Properties processProperties) {
+        if (!valid) {
+            moveFileToCorruptFolder(addFile.getPath(), processProperties.getProperty("fileCorruptPath"));
+            moveFileToCorruptFolder(delFile.getPath(), processProperties.getProperty("fileCorruptPath"));
+            return;
+        }
+        moveFileToProcessedFolder(addFile.getPath(), processProperties.getProperty("fileProcessedPath"));
+        moveFileToProcessedFolder(delFile.getPath(), processProperties.getProperty("fileProcessedPath"));
+        CheckpointJournal.delete(checkpointPath(processProperties, extractDateFromFilename(addFile.getName())));
+    }
+
+    private static Path checkpointPath(Properties properties, String fileDate) {
+        return Paths.get(properties.getProperty("checkpoint.dir", properties.getProperty("fileProcessedPath")), "checkpoint_" + fileDate + ".properties");
     }
 
+    // db.lookup.mode=preload reads active_msisdn_list once into a mapped snapshot instead of querying per batch
+    private ImsiLookup createImsiLookup(Properties properties) {
+        if (!"preload".equalsIgnoreCase(properties.getProperty("db.lookup.mode", "query"))) {
+            return database;
+        }
+        Path snapshotPath = Paths.get(properties.getProperty("db.snapshot.path",
+                properties.getProperty("fileProcessedPath") + "/active_msisdn_list.snapshot"));
+        long maxAge = TimeUnit.MINUTES.toMillis(Long.parseLong(properties.getProperty("db.snapshot.maxAgeMinutes", "1440")));
+        int fetchSize = Integer.parseInt(properties.getProperty("db.preload.fetchSize", "10000"));
+        try {
+            return ImsiSnapshot.load(database, snapshotPath, maxAge, fetchSize);
+        } catch (IOException | SQLException e) {
+            logger.severe("Failed to preload active_msisdn_list, using database queries: " + e.getMessage());
+            return database;
+        }
+    }
+
+    // The cache is on by default only with several operators; db.cache.maxEntries=0 turns it off and a preloaded snapshot needs none
+    private static ImsiCache createImsiCache(ImsiLookup lookup, Properties properties) {
+        String maxEntriesProperty = properties.getProperty("db.cache.maxEntries", "");
+        long maxEntries = !maxEntriesProperty.isEmpty() ? Long.parseLong(maxEntriesProperty)
+                : properties.getProperty("operators", "").trim().isEmpty() ? 0 : 1000000;
+        if (maxEntries <= 0 || "preload".equalsIgnoreCase(properties.getProperty("db.lookup.mode", "query"))) {
+            return null;
+        }
+        return new ImsiCache(lookup, maxEntries, TimeUnit.MINUTES.toMillis(Long.parseLong(properties.getProperty("db.cache.maxAgeMinutes", "60"))));
+    }
 
-    private File getFirstFile(String directoryPath, String filePrefix) {
+    private File getFirstFile(String directoryPath, String filePrefix, Properties properties) {
         logger.info("Getting the first file");
         File dir = new File(directoryPath);
-        File[] files = dir.listFiles((d, name) -> name.startsWith(filePrefix));
+        File[] files = dir.listFiles((d, name) -> isInputFile(name, filePrefix, properties));
         if (files == null || files.length == 0) {
             return null;
         }
 
-        TreeMap<String, File> fileMap = new TreeMap<>();
+        // Single pass for the earliest dated file instead of building a sorted map on every call
+        File first = null;
+        String firstDate = null;
         for (File file : files) {
             String dateStr = extractDateFromFilename(file.getName());
-            if (dateStr != null) {
-                fileMap.put(dateStr, file);
+            if (dateStr != null && (firstDate == null || dateStr.compareTo(firstDate) < 0)) {
+                first = file;
+                firstDate = dateStr;
             }
         }
 
-        return fileMap.firstEntry().getValue();
+        return first;
     }
 
     private boolean validateDate(File addFile, File delFile) {
@@ -96,105 +357,275 @@ public class FileProcessor {
         return true;
     }
 
-    private String extractDateFromFilename(String fileName) {
-        Pattern datePattern = Pattern.compile("(\\d{8})");
-        Matcher matcher = datePattern.matcher(fileName);
+    // Without input.extensions every file with the prefix is an input except partial downloads; with it only the
+    // listed endings, e.g. .csv and .csv.gz, in any case. Files with the prefix that are skipped are logged once.
+    static boolean isInputFile(String fileName, String prefix, Properties properties) {
+        if (!fileName.startsWith(prefix)) {
+            return false;
+        }
+        String lowerName = fileName.toLowerCase(Locale.ROOT);
+        String extensions = properties.getProperty("input.extensions", "");
+        boolean matches = false;
+        if (extensions.isEmpty()) {
+            matches = !lowerName.endsWith(".part") && !lowerName.endsWith(".tmp");
+        } else {
+            for (String extension : extensions.split(",")) {
+                if (lowerName.endsWith(extension.trim().toLowerCase(Locale.ROOT))) {
+                    matches = true;
+                    break;
+                }
+            }
+        }
+        if (!matches && SKIPPED_INPUTS.add(fileName)) {
+            logger.info("Skipping " + fileName + ": " + (extensions.isEmpty() ? "partial download" : "not one of input.extensions " + extensions));
+        }
+        return matches;
+    }
+
+    static String extractDateFromFilename(String fileName) {
+        Matcher matcher = DATE_PATTERN.matcher(fileName);
         if (matcher.find()) {
             return matcher.group(1);
         }
         return null;
     }
 
-    private void processSimChangeAndHlrDeactivation(File addFile, File delFile, Properties properties) throws IOException {
+    private void processSimChangeAndHlrDeactivation(File addFile, File delFile, Properties properties, PairMetrics pair) throws IOException {
         logger.info("Processing SIM and HLR Deactivation");
         logger.info("Add File: " + addFile.getPath());
         logger.info("Del File: " + delFile.getPath());
+        pair.bytesRead(addFile.length() + delFile.length());
 
-        List<String[]> addFileLines = CSVReader.readCSV(addFile);
-        List<String[]> delFileLines = CSVReader.readCSV(delFile);
-
-        String timestamp = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
-        String date = new SimpleDateFormat("yyyyMMdd").format(new Date());
+        String fileDate = extractDateFromFilename(addFile.getName());
         String operator = properties.getProperty("operator");
+        CheckpointJournal journal = CheckpointJournal.open(
+                checkpointPath(properties, fileDate),
+                Boolean.parseBoolean(properties.getProperty("checkpoint.enabled", "true")), addFile, delFile);
+        String timestamp = journal.getTimestamp();
+
+        // Names carry the dump date so pairs processed in the same second or on the same day do not overwrite each other
+        String simChangeFilePath = properties.getProperty("simchangeFileDir") + timestamp + "_" + fileDate + "_" + properties.getProperty("simchangeFileName");
+        String hlrDeactivationFilePath = properties.getProperty("hlrDeactivationFileDir") + timestamp + "_" + fileDate + "_" + properties.getProperty("hlrDeactivationFileName");
+        String addFilePathForHlrDel = properties.getProperty("addFilePathForHlrDelDir") + properties.getProperty("addFilePathForHlrDelName")+"_"+ operator + "_" +fileDate+".csv";
+        String addFilePathForHlrAdd = properties.getProperty("addFilePathForHlrAddDir") + properties.getProperty("addFilePathForHlrAddName")+"_"+ operator + "_" +fileDate+".csv";
+
+        OutputFile simChange = new OutputFile("simChange", simChangeFilePath, properties);
+        OutputFile hlrDeactivation = new OutputFile("hlrDeactivation", hlrDeactivationFilePath, properties);
+        OutputFile hlrAdd = new OutputFile("hlrAdd", addFilePathForHlrAdd, properties);
+        OutputFile hlrDel = new OutputFile("hlrDel", addFilePathForHlrDel, properties);
+        OutputFile error = new OutputFile("error", properties.getProperty("fileCorruptPath") + "/error_" + fileDate + ".csv", properties);
+        List<OutputFile> outputs = Arrays.asList(simChange, hlrDeactivation, hlrAdd, hlrDel, error);
 
-        String simChangeFilePath = properties.getProperty("simchangeFileDir") + timestamp + "_" + properties.getProperty("simchangeFileName");
-        String hlrDeactivationFilePath = properties.getProperty("hlrDeactivationFileDir") + timestamp + "_" + properties.getProperty("hlrDeactivationFileName");
-        String addFilePathForHlrDel = properties.getProperty("addFilePathForHlrDelDir") + properties.getProperty("addFilePathForHlrDelName")+"_"+ operator + "_" +date+".csv";
-        String addFilePathForHlrAdd = properties.getProperty("addFilePathForHlrAddDir") + properties.getProperty("addFilePathForHlrAddName")+"_"+ operator + "_" +date+".csv";
-
-        try (BufferedWriter simChangeWriter = new BufferedWriter(new FileWriter(simChangeFilePath));
-             BufferedWriter hlrDeacWriter = new BufferedWriter(new FileWriter(hlrDeactivationFilePath));
-             BufferedWriter addHlrWriter = new BufferedWriter(new FileWriter(addFilePathForHlrAdd));
-             BufferedWriter delHlrWriter = new BufferedWriter(new FileWriter(addFilePathForHlrDel));
-             BufferedWriter errorWriter = new BufferedWriter(new FileWriter(properties.getProperty("fileCorruptPath") + "/error.csv"))) {
+        try {
+            if (journal.getStage() != CheckpointJournal.Stage.COMMIT) {
+                writeOutputs(addFile, delFile, properties, journal, outputs, simChange, hlrDeactivation, hlrAdd, hlrDel, error, pair);
+            }
+            // Outputs become visible under their final names only once the whole pair is done
+            for (OutputFile output : outputs) {
+                output.commit();
+                pair.bytesWritten(output.size());
+            }
+            if (deltaEnabled(properties)) {
+                DumpDelta.commitSnapshot(Paths.get(properties.getProperty("fileProcessedPath")), fileDate,
+                        Integer.parseInt(properties.getProperty("hlr.delta.keepSnapshots", "2")));
+            }
+            // The journal stays at COMMIT until movePair, so a pair left in place is only committed again, not rewritten
+        } catch (InvalidFileException e) {
+            // Validation runs in the same pass that writes the outputs, so only the error output is kept
+            logger.severe("Invalid file: " + e.getMessage());
+            for (OutputFile output : outputs) {
+                if (output != error) {
+                    output.discard();
+                }
+            }
+            // The message quotes field values and file names, which may themselves contain separators
+            error.writer().write("FAIL," + CsvValues.quote(e.getMessage()));
+            error.writer().newLine();
+            error.commit();
+            if (deltaEnabled(properties)) {
+                DumpDelta.discardSnapshot(Paths.get(properties.getProperty("fileProcessedPath")), fileDate);
+            }
+            journal.delete();
+            throw e;
+        } catch (IOException e) {
+            logger.severe("Failed to process files: " + e.getMessage());
+            throw e;
+        } finally {
+            for (OutputFile output : outputs) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    logger.warning("Failed to close " + output.getName() + " output: " + e.getMessage());
+                }
+            }
+        }
+    }
 
-            // Write headers
-            hlrDeacWriter.write("Delete Date Time,MSISDN");
-            hlrDeacWriter.newLine();
-            simChangeWriter.write("newImsi,oldImsi,msisdn,activation_date");
-            simChangeWriter.newLine();
-            addHlrWriter.write("imsi,msisdn,activation_date");
-            addHlrWriter.newLine();
-            delHlrWriter.write("imsi,msisdn,activation_date");
-            delHlrWriter.newLine();
-            errorWriter.write("Status,Message");
-            errorWriter.newLine();
-
-            // Write addFile contents to addHlrWriter
-            for (String[] line : addFileLines) {
-                if (!line[0].equals("CREATED_DATE")) { // Skip header row
-                    logger.info("Add Hlr Deactivation");
-                    addHlrWriter.write(String.join(",", line[4], line[2], line[0])); // Assuming IMSI, MSISDN, CREATED_DATE
-                    addHlrWriter.newLine();
+    private void writeOutputs(File addFile, File delFile, Properties properties, CheckpointJournal journal, List<OutputFile> outputs,
+                              OutputFile simChange, OutputFile hlrDeactivation, OutputFile hlrAdd, OutputFile hlrDel, OutputFile error,
+                              PairMetrics pair) throws IOException {
+        if (journal.isResumed()) {
+            try {
+                for (OutputFile output : outputs) {
+                    output.reopen(journal.getOutputSize(output.getName()));
                 }
+            } catch (IOException e) {
+                // Without the partial outputs the checkpoint is useless; the next run starts over
+                journal.delete();
+                throw e;
+            }
+        } else {
+            for (OutputFile output : outputs) {
+                output.create();
             }
 
-            // Process delFile contents
-            for (String[] line : delFileLines) {
-                if (!line[0].equals("Customer Account ID")) { // Skip header row
-                    String msisdn = line[1];
-                    String oldImsi = getImsi(msisdn, addFileLines); // Method to retrieve old IMSI from delFile
-                    String newImsi = getNewImsi(msisdn, addFileLines);
-                    String delDate = line[8]; // Delete Date Time
+            // Write headers
+            hlrDeactivation.writer().write("Delete Date Time,MSISDN");
+            hlrDeactivation.writer().newLine();
+            simChange.writer().write("newImsi,oldImsi,msisdn,activation_date");
+            simChange.writer().newLine();
+            hlrAdd.writer().write("imsi,msisdn,activation_date");
+            hlrAdd.writer().newLine();
+            hlrDel.writer().write("imsi,msisdn,activation_date");
+            hlrDel.writer().newLine();
+            error.writer().write("Status,Message");
+            error.writer().newLine();
+            checkpoint(journal, CheckpointJournal.Stage.STARTED, 0, outputs);
+        }
 
-                    if (newImsi != null && oldImsi != null) {
-                        logger.info("Sim writer");
-                        simChangeWriter.write(String.join(",", newImsi, oldImsi, msisdn, delDate));
-                        simChangeWriter.newLine();
+        // Write addFile contents to addHlrWriter and build the add file lookups in the same pass.
+        // After a restart past this stage the lookups are rebuilt but the add output is kept as is.
+        boolean writeAddOutput = journal.getStage() == CheckpointJournal.Stage.STARTED;
+        RowWriter addHlrWriter = hlrAdd.writer();
+        long addStart = System.nanoTime();
+        // Add files too large to index on the heap are joined by external sort instead
+        boolean sortMerge = useSortMergeJoin(addFile, properties);
+        MsisdnIndex oldImsiIndex = sortMerge ? null : new MsisdnIndex(1, 0);
+        MsisdnIndex newImsiIndex = sortMerge ? null : new MsisdnIndex(2, 4);
+        try (SortMergeJoin join = sortMerge
+                ? new SortMergeJoin(Paths.get(properties.getProperty("join.tempDir", properties.getProperty("fileProcessedPath"))), joinMemoryBudget(properties))
+                : null) {
+            // hlr.delta.enabled=true writes only the changes against the previous dump instead of the whole dump
+            try (DumpDelta delta = writeAddOutput && deltaEnabled(properties)
+                    ? new DumpDelta(Paths.get(properties.getProperty("fileProcessedPath")), extractDateFromFilename(addFile.getName()),
+                            Long.parseLong(properties.getProperty("hlr.delta.memoryMb", "256")) << 20)
+                    : null;
+                 RowValidator addValidator = fileValidator.addFileValidator(addFile)) {
+                CSVReader.forEachRow(addFile, properties, line -> {
+                    addValidator.check(line);
+                    if (join != null) {
+                        join.addAddRow(line);
                     } else {
-                        logger.info("HLR deactivation");
-                        hlrDeacWriter.write(String.join(",", delDate, msisdn)); // Assuming Delete Date Time, MSISDN
-                        hlrDeacWriter.newLine();
+                        oldImsiIndex.add(line);
+                        newImsiIndex.add(line);
+                    }
+                    if (line.fieldEquals(0, "CREATED_DATE")) { // Skip header row
+                        return;
                     }
-                    if(newImsi !=null){
-                        logger.info("del Hlr ");
-                        delHlrWriter.write(String.join(",", newImsi, msisdn, delDate));
-                        delHlrWriter.newLine();
+                    pair.addRows(1);
+                    if (writeAddOutput) {
+                        if (delta != null) {
+                            delta.add(line.get(2), line.get(4), line.get(0));
+                        } else {
+                            addHlrWriter.field(line, 4).field(line, 2).field(line, 0).endRow(); // Assuming IMSI, MSISDN, CREATED_DATE
+                            pair.counts().hlrAdd(1);
+                        }
                     }
+                });
+                addValidator.finish();
+                if (delta != null) {
+                    delta.writeDelta(addHlrWriter, hlrDel.writer());
+                    pair.counts().hlrAdd(delta.getAdded() + delta.getChanged());
+                    pair.counts().hlrDel(delta.getRemoved() + delta.getChanged());
                 }
             }
-        } catch (IOException e) {
-            logger.severe("Failed to process files: " + e.getMessage());
-            throw e;
+            pair.stage("add", addStart, pair.getAddRows());
+            if (writeAddOutput) {
+                checkpoint(journal, CheckpointJournal.Stage.ADD_DONE, 0, outputs);
+            }
+
+            try (RowValidator delValidator = fileValidator.delFileValidator(delFile, journal.getDelOffset() == 0)) {
+                long delStart = System.nanoTime();
+                if (join != null) {
+                    // The join only produces rows once the whole del file is sorted, so there are no checkpoints in between
+                    CSVReader.forEachRow(delFile, properties, journal.getDelOffset(), line -> {
+                        delValidator.check(line);
+                        if (!line.fieldEquals(0, "Customer Account ID")) { // Skip header row
+                            DelFileClassifier.requireDelFields(line, delFile);
+                            join.addDelRow(line.get(1), line.get(8)); // MSISDN, Delete Date Time
+                        }
+                    });
+                    delValidator.finish();
+                    join.join(imsiLookup, Integer.parseInt(properties.getProperty("db.lookup.batchSize", "500")),
+                            (msisdn, delDate, oldImsi, newImsi) -> {
+                                DelFileClassifier.writeRow(msisdn, delDate, oldImsi, newImsi,
+                                        simChange.writer(), hlrDeactivation.writer(), hlrDel.writer(), pair.counts());
+                                pair.delRows(1);
+                            });
+                } else {
+                    // Process delFile contents, resuming after the last checkpointed chunk
+                    long interval = Long.parseLong(properties.getProperty("checkpoint.intervalRows", "1000000"));
+                    long[] rowsSinceCheckpoint = {0};
+                    new DelFileClassifier(oldImsiIndex, newImsiIndex, imsiLookup, delValidator, pair.counts(), workers, properties)
+                            .process(delFile, properties, journal.getDelOffset(), simChange.writer(), hlrDeactivation.writer(), hlrDel.writer(),
+                                    (delOffset, rows) -> {
+                                        pair.delRows(rows);
+                                        rowsSinceCheckpoint[0] += rows;
+                                        if (rowsSinceCheckpoint[0] >= interval) {
+                                            checkpoint(journal, CheckpointJournal.Stage.ADD_DONE, delOffset, outputs);
+                                            rowsSinceCheckpoint[0] = 0;
+                                        }
+                                    });
+                }
+                pair.stage("del", delStart, pair.getDelRows());
+            }
+        }
+
+        checkpoint(journal, CheckpointJournal.Stage.COMMIT, journal.getDelOffset(), outputs);
+        for (OutputFile output : outputs) {
+            output.close();
         }
     }
 
-    private String getImsi(String msisdn, List<String[]> addFileLines) {
-        for (String[] line : addFileLines) {
-            if (line.length > 1 && line[1].equals(msisdn)) { // Assuming MSISDN is at index 1
-                return line[0];
-            }
+    private static boolean deltaEnabled(Properties properties) {
+        return Boolean.parseBoolean(properties.getProperty("hlr.delta.enabled", "false"));
+    }
+
+    // join.strategy=auto picks the sort-merge join when the add file lookups would not fit in join.memoryBudgetMb
+    private static boolean useSortMergeJoin(File addFile, Properties properties) throws IOException {
+        String strategy = properties.getProperty("join.strategy", "auto");
+        switch (strategy) {
+            case "memory":
+                return false;
+            case "sortmerge":
+                return true;
+            case "auto":
+                long fileBytes = Compression.detect(addFile) == Compression.NONE ? addFile.length() : addFile.length() * COMPRESSED_EXPANSION;
+                long estimate = (long) (fileBytes * INDEX_BYTES_PER_FILE_BYTE);
+                boolean sortMerge = estimate > joinMemoryBudget(properties);
+                if (sortMerge) {
+                    logger.info("Add file " + addFile.getName() + " needs about " + (estimate >> 20) + " MB of lookups, using sort-merge join");
+                }
+                return sortMerge;
+            default:
+                throw new IllegalArgumentException("Unknown join.strategy: " + strategy);
         }
-        return database.getImsi(msisdn);
     }
 
-    private String getNewImsi(String msisdn, List<String[]> addFileLines) {
-        for (String[] line : addFileLines) {
-            if (line.length > 1 && line[2].equals(msisdn)) { // Assuming MSISDN is at index 1
-                return line[4]; // Assuming IMSI is at index 0
-            }
+    private static long joinMemoryBudget(Properties properties) {
+        String budget = properties.getProperty("join.memoryBudgetMb", "");
+        return budget.isEmpty() ? Runtime.getRuntime().maxMemory() / 2 : Long.parseLong(budget) << 20;
+    }
+
+    private void checkpoint(CheckpointJournal journal, CheckpointJournal.Stage stage, long delOffset, List<OutputFile> outputs) throws IOException {
+        if (!journal.isEnabled()) {
+            return;
         }
-        return null;
+        Map<String, Long> sizes = new HashMap<>();
+        for (OutputFile output : outputs) {
+            sizes.put(output.getName(), output.sync());
+        }
+        journal.record(stage, delOffset, sizes);
     }
 
     private void moveFileToCorruptFolder(String filePath, String corruptFolderPath) {
@@ -219,17 +650,23 @@ public class FileProcessor {
         }
     }
 
-    private void updateAuditTrail(Properties properties, String statusCode, String status, String message) {
-        String auditTrailPath = properties.getProperty("fileCorruptPath") + "/audit_trail.log";
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(auditTrailPath, true))) {
-            writer.write(String.format("%s,%s,%s,%s,%s%n",
-                    new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()),
-                    statusCode,
-                    status,
-                    message,
-                    properties.getProperty("fileProcessedPath")));
+    private void writeRunSummary() {
+        try {
+            Path summary = metrics.writeSummary(summaryDir);
+            logger.info("Run summary written to " + summary);
+        } catch (IOException e) {
+            logger.warning("Failed to write run summary: " + e.getMessage());
+        }
+    }
+
+    private void closeAuditTrail() {
+        if (auditTrail == null) {
+            return;
+        }
+        try {
+            auditTrail.close();
         } catch (IOException e) {
-            logger.severe("Failed to update audit trail: " + e.getMessage());
+            logger.severe("Failed to close the audit trail: " + e.getMessage());
         }
     }
 }
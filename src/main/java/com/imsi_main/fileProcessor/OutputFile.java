@@ -0,0 +1,91 @@
+package com.imsi_main.fileProcessor;
+
+import com.imsi_main.util.Compression;
+import com.imsi_main.util.OutputSink;
+import com.imsi_main.util.RowWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+// Output written to a .part file that is renamed to its final name only when the whole pair has been processed
+class OutputFile implements Closeable {
+
+    private final String name;
+    private final Path path;
+    private final Path partPath;
+    private final Compression compression;
+    private final int level;
+    private final int bufferSize;
+    private RowWriter writer;
+
+    // output.<name>.compression, .level and .bufferKb override the output.* defaults; compressed names get .gz or .zst appended
+    OutputFile(String name, String path, Properties properties) {
+        this.name = name;
+        this.compression = Compression.fromName(setting(properties, name, "compression", "none"));
+        this.level = Integer.parseInt(setting(properties, name, "level", "-1"));
+        this.bufferSize = Integer.parseInt(setting(properties, name, "bufferKb", "256")) << 10;
+        this.path = Paths.get(path + compression.extension());
+        this.partPath = Paths.get(path + compression.extension() + ".part");
+    }
+
+    private static String setting(Properties properties, String name, String key, String defaultValue) {
+        return properties.getProperty("output." + name + "." + key, properties.getProperty("output." + key, defaultValue));
+    }
+
+    String getName() {
+        return name;
+    }
+
+    RowWriter create() throws IOException {
+        writer = new RowWriter(OutputSink.open(partPath, compression, level, 0), bufferSize);
+        return writer;
+    }
+
+    // Reopens the .part file cut back to the size recorded at the last checkpoint
+    RowWriter reopen(long size) throws IOException {
+        if (size < 0 || !Files.exists(partPath) || Files.size(partPath) < size) {
+            throw new IOException("Checkpointed output is missing or shorter than recorded: " + partPath);
+        }
+        writer = new RowWriter(OutputSink.open(partPath, compression, level, size), bufferSize);
+        return writer;
+    }
+
+    RowWriter writer() {
+        return writer;
+    }
+
+    // Flushes and syncs the .part file and returns its size
+    long sync() throws IOException {
+        return writer.checkpoint();
+    }
+
+    void commit() throws IOException {
+        if (Files.exists(partPath)) {
+            Files.move(partPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    // Size of the committed file, or 0 when nothing was committed under the final name
+    long size() throws IOException {
+        return Files.exists(path) ? Files.size(path) : 0;
+    }
+
+    // Drops the .part file of an output that will never be committed
+    void discard() throws IOException {
+        close();
+        Files.deleteIfExists(partPath);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
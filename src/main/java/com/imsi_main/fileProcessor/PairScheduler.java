@@ -0,0 +1,127 @@
+package com.imsi_main.fileProcessor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Works through a backlog of dated add/del pairs on {@code processing.pairThreads}
+ * workers. Pairs are processed concurrently, but their files are moved to the
+ * processed or corrupt folder strictly in date order. Once a pair fails and is left in
+ * place, later pairs are left in place too and wait for the next run, where they follow it.
+ */
+class PairScheduler {
+
+    private static final Logger logger = Logger.getLogger(PairScheduler.class.getName());
+
+    private final FileProcessor fileProcessor;
+    private final Properties properties;
+    private final int threads;
+
+    PairScheduler(FileProcessor fileProcessor, Properties properties, int threads) {
+        this.fileProcessor = fileProcessor;
+        this.properties = properties;
+        this.threads = threads;
+    }
+
+    void run() {
+        List<FilePair> pairs = collectPairs();
+        if (pairs.isEmpty()) {
+            logger.info("No more files to process.");
+            return;
+        }
+        logger.info("Processing " + pairs.size() + " file pairs on " + threads + " threads");
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, pairs.size()));
+        try {
+            List<Future<Boolean>> results = new ArrayList<>(pairs.size());
+            for (FilePair pair : pairs) {
+                results.add(pool.submit(() -> fileProcessor.processPairContents(pair.getAddFile(), pair.getDelFile(), properties)));
+            }
+            // Waiting in submission order keeps the moves in date order even when later dates finish first
+            FilePair failed = null;
+            for (int i = 0; i < pairs.size(); i++) {
+                FilePair pair = pairs.get(i);
+                Future<Boolean> result = results.get(i);
+                if (failed != null) {
+                    // Pairs not started yet are skipped; the ones already running are waited for below
+                    result.cancel(false);
+                    logger.info("Leaving " + pair + " in place until " + failed + " succeeds");
+                    continue;
+                }
+                Boolean valid = await(pair, result);
+                if (valid == null) {
+                    failed = pair;
+                } else {
+                    fileProcessor.movePair(pair.getAddFile(), pair.getDelFile(), valid, properties);
+                }
+            }
+        } finally {
+            pool.shutdown();
+            awaitTermination(pool);
+        }
+    }
+
+    // Nothing may still be writing when the run ends and the database is closed
+    private static void awaitTermination(ExecutorService pool) {
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<FilePair> collectPairs() {
+        Map<String, File> addFiles = listByDate(properties.getProperty("addFilePath"), properties.getProperty("addFileNamePrefix"), properties);
+        Map<String, File> delFiles = listByDate(properties.getProperty("delFilePath"), properties.getProperty("delFileNamePrefix"), properties);
+        List<FilePair> pairs = new ArrayList<>();
+        for (Map.Entry<String, File> entry : addFiles.entrySet()) {
+            File delFile = delFiles.remove(entry.getKey());
+            if (delFile == null) {
+                logger.info("Waiting for del file of " + entry.getValue().getName());
+            } else {
+                pairs.add(new FilePair(entry.getKey(), entry.getValue(), delFile));
+            }
+        }
+        for (File delFile : delFiles.values()) {
+            logger.info("Waiting for add file of " + delFile.getName());
+        }
+        return pairs;
+    }
+
+    private static Map<String, File> listByDate(String directoryPath, String filePrefix, Properties properties) {
+        TreeMap<String, File> files = new TreeMap<>();
+        File[] listed = new File(directoryPath).listFiles((d, name) -> FileProcessor.isInputFile(name, filePrefix, properties));
+        if (listed != null) {
+            for (File file : listed) {
+                String date = FileProcessor.extractDateFromFilename(file.getName());
+                if (date != null) {
+                    files.putIfAbsent(date, file);
+                }
+            }
+        }
+        return files;
+    }
+
+    // Null when processing failed or crashed; those files stay in place for the next run
+    private static Boolean await(FilePair pair, Future<Boolean> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while processing " + pair, e);
+        } catch (ExecutionException e) {
+            logger.severe("Failed to process files " + pair + ", leaving them in place: " + e.getCause());
+            return null;
+        }
+    }
+}
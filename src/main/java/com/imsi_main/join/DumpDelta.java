@@ -0,0 +1,224 @@
+package com.imsi_main.join;
+
+import com.imsi_main.util.ExternalSorter;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Day-over-day diff of HLR full dumps. Today's rows are external-sorted by MSISDN into a
+ * snapshot file next to the processed dumps, then merge-joined against the latest older
+ * snapshot. Only MSISDNs that are new, gone, or whose IMSI changed are written out. The
+ * first row of an MSISDN in the dump wins, as with the in-memory join.
+ * <p>
+ * Today's snapshot is written as a .part file and only takes its final name in
+ * {@link #commitSnapshot}, once the pair's outputs have been committed, so a pair that
+ * fails never becomes the base of the next day's delta. Deltas depend on the previous
+ * day's snapshot, so pairs must be processed one at a time in date order.
+ */
+public class DumpDelta implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(DumpDelta.class.getName());
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("hlr_snapshot_(\\d{8})\\.csv");
+    private static final String NEW_LINE = System.lineSeparator();
+
+    // Snapshot lines are msisdn,imsi,created_date and are ordered by the MSISDN alone
+    private static final Comparator<String> BY_MSISDN = Comparator.comparing(DumpDelta::key);
+
+    private final Path snapshotDir;
+    private final String date;
+    private final ExternalSorter sorter;
+
+    private long added;
+    private long removed;
+    private long changed;
+
+    public DumpDelta(Path snapshotDir, String date, long memoryBudget) {
+        this.snapshotDir = snapshotDir;
+        this.date = date;
+        this.sorter = new ExternalSorter(BY_MSISDN, memoryBudget, snapshotDir);
+    }
+
+    public void add(String msisdn, String imsi, String createdDate) throws IOException {
+        sorter.add(msisdn + ',' + imsi + ',' + createdDate);
+    }
+
+    // Writes new and changed MSISDNs as imsi,msisdn,activation_date to addWriter and removed or replaced ones to delWriter
+    public void writeDelta(Writer addWriter, Writer delWriter) throws IOException {
+        Path current = pendingSnapshot(snapshotDir, date);
+        Path previous = findPreviousSnapshot();
+        sorter.sortTo(current);
+        logger.info("Comparing dump snapshot for " + date + " with "
+                + (previous == null ? "nothing, all rows are new" : previous.getFileName().toString()));
+
+        try (SnapshotReader today = new SnapshotReader(current);
+             SnapshotReader before = previous == null ? null : new SnapshotReader(previous)) {
+            today.advance();
+            if (before != null) {
+                before.advance();
+            }
+            while (today.msisdn != null || (before != null && before.msisdn != null)) {
+                int cmp;
+                if (before == null || before.msisdn == null) {
+                    cmp = 1;
+                } else if (today.msisdn == null) {
+                    cmp = -1;
+                } else {
+                    cmp = before.msisdn.compareTo(today.msisdn);
+                }
+
+                if (cmp < 0) {
+                    write(delWriter, before);
+                    removed++;
+                    before.advance();
+                } else if (cmp > 0) {
+                    write(addWriter, today);
+                    added++;
+                    today.advance();
+                } else {
+                    if (!before.imsi.equals(today.imsi)) {
+                        write(addWriter, today);
+                        write(delWriter, before);
+                        changed++;
+                    }
+                    before.advance();
+                    today.advance();
+                }
+            }
+        }
+        logger.info("Dump delta for " + date + ": " + added + " added, " + removed + " removed, " + changed + " IMSI changes");
+    }
+
+    // Gives the snapshot written by writeDelta its final name and removes all but the newest keepSnapshots
+    public static void commitSnapshot(Path snapshotDir, String date, int keepSnapshots) throws IOException {
+        Path pending = pendingSnapshot(snapshotDir, date);
+        if (Files.exists(pending)) {
+            Files.move(pending, snapshotDir.resolve("hlr_snapshot_" + date + ".csv"),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        removeOldSnapshots(snapshotDir, Math.max(1, keepSnapshots));
+    }
+
+    // Drops the snapshot of a pair that failed, whose delta was never sent
+    public static void discardSnapshot(Path snapshotDir, String date) throws IOException {
+        Files.deleteIfExists(pendingSnapshot(snapshotDir, date));
+    }
+
+    private static Path pendingSnapshot(Path snapshotDir, String date) {
+        return snapshotDir.resolve("hlr_snapshot_" + date + ".csv.part");
+    }
+
+    private static void write(Writer writer, SnapshotReader row) throws IOException {
+        writer.write(row.imsi);
+        writer.write(',');
+        writer.write(row.msisdn);
+        writer.write(',');
+        writer.write(row.createdDate);
+        writer.write(NEW_LINE);
+    }
+
+    private Path findPreviousSnapshot() throws IOException {
+        Path latest = null;
+        String latestDate = null;
+        for (Path snapshot : listSnapshots(snapshotDir)) {
+            String snapshotDate = snapshotDate(snapshot);
+            if (snapshotDate.compareTo(date) < 0 && (latestDate == null || snapshotDate.compareTo(latestDate) > 0)) {
+                latest = snapshot;
+                latestDate = snapshotDate;
+            }
+        }
+        return latest;
+    }
+
+    private static void removeOldSnapshots(Path snapshotDir, int keepSnapshots) throws IOException {
+        List<Path> snapshots = listSnapshots(snapshotDir);
+        snapshots.sort(Comparator.comparing(DumpDelta::snapshotDate).reversed());
+        for (int i = keepSnapshots; i < snapshots.size(); i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+    }
+
+    private static List<Path> listSnapshots(Path snapshotDir) throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(snapshotDir, "hlr_snapshot_*.csv")) {
+            for (Path file : files) {
+                if (SNAPSHOT_NAME.matcher(file.getFileName().toString()).matches()) {
+                    snapshots.add(file);
+                }
+            }
+        }
+        return snapshots;
+    }
+
+    private static String snapshotDate(Path snapshot) {
+        Matcher matcher = SNAPSHOT_NAME.matcher(snapshot.getFileName().toString());
+        return matcher.matches() ? matcher.group(1) : "";
+    }
+
+    private static String key(String line) {
+        int comma = line.indexOf(',');
+        return comma < 0 ? line : line.substring(0, comma);
+    }
+
+    public long getAdded() {
+        return added;
+    }
+
+    public long getRemoved() {
+        return removed;
+    }
+
+    public long getChanged() {
+        return changed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        sorter.close();
+    }
+
+    // Reads a sorted snapshot, skipping repeated MSISDNs after the first
+    private static final class SnapshotReader implements Closeable {
+        private final BufferedReader reader;
+        String msisdn;
+        String imsi;
+        String createdDate;
+
+        SnapshotReader(Path snapshot) throws IOException {
+            this.reader = Files.newBufferedReader(snapshot, StandardCharsets.UTF_8);
+        }
+
+        void advance() throws IOException {
+            String previous = msisdn;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",", 3);
+                if (fields.length == 3 && !fields[0].equals(previous)) {
+                    msisdn = fields[0];
+                    imsi = fields[1];
+                    createdDate = fields[2];
+                    return;
+                }
+            }
+            msisdn = null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
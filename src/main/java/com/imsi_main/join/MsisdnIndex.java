@@ -0,0 +1,85 @@
+package com.imsi_main.join;
+
+import com.imsi_main.util.CsvRow;
+import com.imsi_main.util.LongLongHashMap;
+import com.imsi_main.util.NumericCodec;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Key column to value column lookup built once over the add file. Numeric keys and
+ * values are packed into a primitive map; anything else falls back to a String map.
+ * The first row seen for a key wins, matching the linear scan it replaces.
+ */
+public class MsisdnIndex {
+
+    // Marks a numeric key whose value did not fit the codec and lives in the fallback map
+    private static final long IN_FALLBACK = -1L;
+
+    private final int keyColumn;
+    private final int valueColumn;
+    private final int minLength;
+    private final LongLongHashMap numeric;
+    private final Map<String, String> fallback = new HashMap<>();
+    private int textKeys;
+
+    public MsisdnIndex(int keyColumn, int valueColumn) {
+        this(keyColumn, valueColumn, 1024);
+    }
+
+    public MsisdnIndex(int keyColumn, int valueColumn, int expectedSize) {
+        this.keyColumn = keyColumn;
+        this.valueColumn = valueColumn;
+        this.minLength = Math.max(keyColumn, valueColumn) + 1;
+        this.numeric = new LongLongHashMap(expectedSize);
+    }
+
+    public void add(CsvRow row) {
+        if (row.size() < minLength) {
+            return;
+        }
+        long encodedKey = row.encodeNumeric(keyColumn);
+        long encodedValue = row.encodeNumeric(valueColumn);
+        if (encodedKey != NumericCodec.NOT_NUMERIC && encodedValue != NumericCodec.NOT_NUMERIC) {
+            if (!numeric.containsKey(encodedKey)) {
+                numeric.put(encodedKey, encodedValue);
+            }
+            return;
+        }
+        add(row.get(keyColumn), row.get(valueColumn));
+    }
+
+    public void add(String key, String value) {
+        long encodedKey = NumericCodec.encode(key);
+        if (encodedKey == NumericCodec.NOT_NUMERIC) {
+            if (fallback.putIfAbsent(key, value) == null) {
+                textKeys++;
+            }
+        } else if (!numeric.containsKey(encodedKey)) {
+            long encodedValue = NumericCodec.encode(value);
+            if (encodedValue == NumericCodec.NOT_NUMERIC) {
+                numeric.put(encodedKey, IN_FALLBACK);
+                fallback.put(key, value);
+            } else {
+                numeric.put(encodedKey, encodedValue);
+            }
+        }
+    }
+
+    public String get(String key) {
+        long encodedKey = NumericCodec.encode(key);
+        if (encodedKey == NumericCodec.NOT_NUMERIC) {
+            return fallback.get(key);
+        }
+        long encodedValue = numeric.get(encodedKey);
+        if (encodedValue == LongLongHashMap.NO_VALUE) {
+            return null;
+        }
+        return encodedValue == IN_FALLBACK ? fallback.get(key) : NumericCodec.decode(encodedValue);
+    }
+
+    public int size() {
+        return numeric.size() + textKeys;
+    }
+}
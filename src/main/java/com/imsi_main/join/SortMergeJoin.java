@@ -0,0 +1,247 @@
+package com.imsi_main.join;
+
+import com.imsi_main.database.ImsiLookup;
+import com.imsi_main.util.CsvRow;
+import com.imsi_main.util.ExternalSorter;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Join strategy for add files too large to index on the heap. The add file lookups and
+ * the del rows are external-sorted by MSISDN and merge-joined in one sequential pass;
+ * the joined rows are then sorted back into del file order, so the outputs match the
+ * in-memory {@link MsisdnIndex} join row for row. Every sort runs within the given
+ * memory budget and spills to the temp directory.
+ */
+public class SortMergeJoin implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(SortMergeJoin.class.getName());
+
+    private static final char SEPARATOR = '\t';
+    private static final String NULL = "-";
+    // Del rows held in memory between flushes of the merge pass, whatever their share of add file misses
+    private static final int MAX_BATCH_ROWS = 10_000;
+
+    public interface RowHandler {
+        void handle(String msisdn, String delDate, String oldImsi, String newImsi) throws IOException;
+    }
+
+    // Records start with their key; ties keep insertion order because the sorter is stable
+    private static final Comparator<String> BY_KEY = Comparator.comparing(SortMergeJoin::firstField);
+    private static final Comparator<String> BY_SEQUENCE = Comparator.comparingLong(line -> Long.parseLong(firstField(line)));
+
+    private final Path tempDir;
+    private final long memoryBudget;
+    private final ExternalSorter oldImsiSorter;
+    private final ExternalSorter newImsiSorter;
+    private final ExternalSorter delSorter;
+    private final List<Path> tempFiles = new ArrayList<>();
+    private long delRows;
+
+    public SortMergeJoin(Path tempDir, long memoryBudget) {
+        this.tempDir = tempDir;
+        this.memoryBudget = memoryBudget;
+        // Three sorters fill up at the same time while the files are read, so they share the budget
+        this.oldImsiSorter = new ExternalSorter(BY_KEY, memoryBudget / 3, tempDir);
+        this.newImsiSorter = new ExternalSorter(BY_KEY, memoryBudget / 3, tempDir);
+        this.delSorter = new ExternalSorter(BY_KEY, memoryBudget / 3, tempDir);
+    }
+
+    // Same lookups as the in-memory join: column 1 gives the old IMSI in column 0, column 2 the new IMSI in column 4
+    public void addAddRow(CsvRow row) throws IOException {
+        if (row.size() > 1) {
+            oldImsiSorter.add(escape(row.get(1)) + SEPARATOR + escape(row.get(0)));
+        }
+        if (row.size() > 4) {
+            newImsiSorter.add(escape(row.get(2)) + SEPARATOR + escape(row.get(4)));
+        }
+    }
+
+    public void addDelRow(String msisdn, String delDate) throws IOException {
+        delSorter.add(escape(msisdn) + SEPARATOR + (delRows++) + SEPARATOR + escape(delDate));
+    }
+
+    public void join(ImsiLookup imsiLookup, int batchSize, RowHandler handler) throws IOException {
+        Path oldImsis = tempFile("join-old-");
+        Path newImsis = tempFile("join-new-");
+        Path dels = tempFile("join-del-");
+        oldImsiSorter.sortTo(oldImsis);
+        newImsiSorter.sortTo(newImsis);
+        delSorter.sortTo(dels);
+        logger.info("Sort-merge join of " + delRows + " del rows");
+
+        // Merge pass: annotate each del row with its old and new IMSI, resolving add file misses in batches
+        try (ExternalSorter joined = new ExternalSorter(BY_SEQUENCE, memoryBudget, tempDir)) {
+            try (BufferedReader delReader = Files.newBufferedReader(dels, StandardCharsets.UTF_8);
+                 Cursor oldCursor = new Cursor(oldImsis);
+                 Cursor newCursor = new Cursor(newImsis)) {
+                List<String[]> batch = new ArrayList<>();
+                Set<String> misses = new HashSet<>();
+                String line;
+                while ((line = delReader.readLine()) != null) {
+                    String[] del = split(line, 3);
+                    String msisdn = unescape(del[0]);
+                    String oldImsi = oldCursor.seek(del[0]);
+                    String newImsi = newCursor.seek(del[0]);
+                    batch.add(new String[]{del[1], msisdn, unescape(del[2]), oldImsi, newImsi});
+                    if (oldImsi == null) {
+                        misses.add(msisdn);
+                    }
+                    // Rows that hit the add file still count towards the batch, so it stays bounded when few rows miss
+                    if (misses.size() >= batchSize || batch.size() >= MAX_BATCH_ROWS) {
+                        flush(batch, misses, imsiLookup, joined);
+                    }
+                }
+                flush(batch, misses, imsiLookup, joined);
+            }
+
+            // Final pass: back into del file order
+            Path ordered = tempFile("join-out-");
+            joined.sortTo(ordered);
+            try (BufferedReader reader = Files.newBufferedReader(ordered, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] row = split(line, 5);
+                    handler.handle(unescape(row[1]), unescape(row[2]), nullable(row[3]), nullable(row[4]));
+                }
+            }
+        }
+    }
+
+    private static void flush(List<String[]> batch, Set<String> misses, ImsiLookup imsiLookup, ExternalSorter joined) throws IOException {
+        Map<String, String> databaseImsis = misses.isEmpty() ? null : imsiLookup.getImsis(misses);
+        for (String[] row : batch) {
+            String oldImsi = row[3] != null ? row[3] : (databaseImsis == null ? null : databaseImsis.get(row[1]));
+            joined.add(row[0] + SEPARATOR + escape(row[1]) + SEPARATOR + escape(row[2]) + SEPARATOR
+                    + (oldImsi == null ? NULL : "+" + escape(oldImsi)) + SEPARATOR
+                    + (row[4] == null ? NULL : "+" + escape(row[4])));
+        }
+        batch.clear();
+        misses.clear();
+    }
+
+    private Path tempFile(String prefix) throws IOException {
+        Path file = Files.createTempFile(tempDir, prefix, ".tmp");
+        tempFiles.add(file);
+        return file;
+    }
+
+    private static String nullable(String field) {
+        return NULL.equals(field) ? null : unescape(field.substring(1));
+    }
+
+    private static String firstField(String line) {
+        int end = line.indexOf(SEPARATOR);
+        return end < 0 ? line : line.substring(0, end);
+    }
+
+    private static String[] split(String line, int fields) {
+        String[] result = new String[fields];
+        int start = 0;
+        for (int i = 0; i < fields - 1; i++) {
+            int end = line.indexOf(SEPARATOR, start);
+            result[i] = line.substring(start, end);
+            start = end + 1;
+        }
+        result[fields - 1] = line.substring(start);
+        return result;
+    }
+
+    // Spill files are one record per line with tab-separated fields, so those characters are escaped
+    static String escape(String value) {
+        if (value.indexOf('\\') < 0 && value.indexOf('\t') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        StringBuilder escaped = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': escaped.append("\\\\"); break;
+                case '\t': escaped.append("\\t"); break;
+                case '\n': escaped.append("\\n"); break;
+                case '\r': escaped.append("\\r"); break;
+                default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                unescaped.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        oldImsiSorter.close();
+        newImsiSorter.close();
+        delSorter.close();
+        for (Path file : tempFiles) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // Walks a key-sorted lookup file forward; the first record of each key is the one that counts.
+    // Keys stay escaped, matching the order the sorter wrote them in
+    private static final class Cursor implements Closeable {
+        private final BufferedReader reader;
+        private String key;
+        private String value;
+
+        Cursor(Path file) throws IOException {
+            this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+            advance();
+        }
+
+        String seek(String escapedMsisdn) throws IOException {
+            while (key != null && key.compareTo(escapedMsisdn) < 0) {
+                advance();
+            }
+            return key != null && key.equals(escapedMsisdn) ? value : null;
+        }
+
+        private void advance() throws IOException {
+            String previous = key;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = split(line, 2);
+                String nextKey = fields[0];
+                if (!nextKey.equals(previous)) {
+                    key = nextKey;
+                    value = unescape(fields[1]);
+                    return;
+                }
+            }
+            key = null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.imsi_main.logging;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes records to a character stream from a background thread. Callers only place the
+ * record in a {@link RingBuffer}; formatting, writing and flushing happen on the writer
+ * thread, which wakes up every {@code flushMillis}, drains what was queued since, and
+ * flushes once per batch of at most one ring's worth of records.
+ */
+public final class AsyncAppender<T> implements Closeable {
+
+    /** Formats one record as one line, without the line separator. */
+    public interface Layout<T> {
+        void format(T record, StringBuilder line);
+    }
+
+    private final RingBuffer<T> buffer;
+    private final Layout<T> layout;
+    private final Writer out;
+    private final boolean closeOut;
+    private final long flushNanos;
+    private final Thread worker;
+    private final StringBuilder line = new StringBuilder(256);
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closed;
+    private boolean failed;
+
+    /**
+     * @param closeOut false for streams owned by someone else, such as {@code System.err};
+     *                 those are only flushed on close
+     */
+    public AsyncAppender(String name, Writer out, boolean closeOut, int capacity, long flushMillis, Layout<T> layout) {
+        this.buffer = new RingBuffer<>(capacity);
+        this.layout = layout;
+        this.out = out;
+        this.closeOut = closeOut;
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushMillis));
+        this.worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // Never waits: when the ring is full the record is dropped and counted
+    public boolean tryAppend(T record) {
+        if (closed || !buffer.offer(record)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    // Waits for room when the ring is full, for records that must not be lost; gives up if the writer thread has died
+    public boolean append(T record) {
+        while (!buffer.offer(record)) {
+            if (closed || !worker.isAlive()) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            LockSupport.unpark(worker);
+            LockSupport.parkNanos(this, 100_000);
+        }
+        return true;
+    }
+
+    private void run() {
+        while (true) {
+            boolean stopping = closed; // Read before draining so nothing queued before close() is missed
+            if (buffer.drain(this::write, buffer.capacity()) > 0) {
+                reportDropped();
+                flush();
+            }
+            if (buffer.isEmpty()) {
+                if (stopping) {
+                    return;
+                }
+                LockSupport.parkNanos(this, flushNanos);
+            }
+        }
+    }
+
+    // A record that cannot be formatted or written is lost on its own; the thread keeps serving the others
+    private void write(T record) {
+        line.setLength(0);
+        try {
+            layout.format(record, line);
+            line.append(System.lineSeparator());
+            out.append(line);
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void reportDropped() {
+        long count = dropped.getAndSet(0);
+        if (count > 0) {
+            try {
+                out.append(Long.toString(count)).append(" records dropped because the ").append(worker.getName())
+                        .append(" buffer was full").append(System.lineSeparator());
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    private void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    // The writer may be the one logging goes through, so its failures are reported on stderr once
+    private void fail(Exception e) {
+        if (!failed) {
+            failed = true;
+            System.err.println(worker.getName() + " failed: " + e);
+        }
+    }
+
+    // Drains and flushes everything queued so far, then closes the stream if it is owned
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(worker);
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        reportDropped();
+        if (closeOut) {
+            out.close();
+        } else {
+            out.flush();
+        }
+    }
+}
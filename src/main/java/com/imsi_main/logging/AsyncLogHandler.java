@@ -0,0 +1,106 @@
+package com.imsi_main.logging;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Properties;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * java.util.logging handler that queues records on an {@link AsyncAppender} instead of
+ * formatting and writing them on the logging thread. Records are written as
+ * {@code yyyy-MM-dd HH:mm:ss.SSS LEVEL logger - message}; when the ring is full new
+ * records are dropped and counted rather than stalling the caller.
+ */
+public class AsyncLogHandler extends Handler {
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private final AsyncAppender<LogRecord> appender;
+    private final SimpleFormatter messages = new SimpleFormatter(); // Used on the writer thread only
+    private Handler[] replaced = new Handler[0];
+
+    public AsyncLogHandler(Writer out, boolean closeOut, int capacity, long flushMillis) {
+        this.appender = new AsyncAppender<>("log-writer", out, closeOut, capacity, flushMillis, this::format);
+    }
+
+    /**
+     * Replaces the root logger's handlers with an asynchronous one writing to
+     * {@code log.file}, or to stderr when it is empty. Returns null when
+     * {@code log.async=false}, leaving the JVM's logging configuration untouched.
+     */
+    public static AsyncLogHandler install(Properties properties) throws IOException {
+        if (!Boolean.parseBoolean(properties.getProperty("log.async", "true"))) {
+            return null;
+        }
+        String file = properties.getProperty("log.file", "");
+        Writer out = file.isEmpty()
+                ? new OutputStreamWriter(System.err, StandardCharsets.UTF_8)
+                : Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        AsyncLogHandler handler = new AsyncLogHandler(out, !file.isEmpty(),
+                Integer.parseInt(properties.getProperty("log.bufferRecords", "8192")),
+                Long.parseLong(properties.getProperty("log.flushMillis", "200")));
+        Logger root = Logger.getLogger("");
+        handler.replaced = root.getHandlers();
+        for (Handler existing : handler.replaced) {
+            root.removeHandler(existing);
+        }
+        root.addHandler(handler);
+        return handler;
+    }
+
+    // Writes out everything still queued and puts the replaced handlers back
+    public void uninstall() {
+        Logger root = Logger.getLogger("");
+        root.removeHandler(this);
+        close();
+        for (Handler existing : replaced) {
+            root.addHandler(existing);
+        }
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (isLoggable(record)) {
+            appender.tryAppend(record);
+        }
+    }
+
+    private void format(LogRecord record, StringBuilder line) {
+        TIMESTAMP.formatTo(Instant.ofEpochMilli(record.getMillis()), line);
+        line.append(' ').append(record.getLevel().getName())
+                .append(' ').append(record.getLoggerName())
+                .append(" - ").append(messages.formatMessage(record));
+        if (record.getThrown() != null) {
+            StringWriter trace = new StringWriter();
+            record.getThrown().printStackTrace(new PrintWriter(trace));
+            line.append(System.lineSeparator()).append(trace.toString().trim());
+        }
+    }
+
+    // The writer thread flushes after every batch, so there is nothing to do here
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+        try {
+            appender.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close the log writer: " + e.getMessage());
+        }
+    }
+}
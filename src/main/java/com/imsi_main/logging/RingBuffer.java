@@ -0,0 +1,63 @@
+package com.imsi_main.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded multi-producer, single-consumer ring. Producers claim a sequence number with one
+ * CAS and publish into its slot; the consumer takes slots in sequence order and stops at
+ * the first one that is claimed but not yet published. Neither side takes a lock.
+ */
+final class RingBuffer<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head; // Written only by the consumer
+
+    RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    // False when the ring is full
+    boolean offer(T item) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head >= slots.length()) {
+                return false;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        slots.set((int) sequence & mask, item);
+        return true;
+    }
+
+    // Hands up to max published items to the consumer in order and returns how many there were
+    int drain(Consumer<T> consumer, int max) {
+        long next = head;
+        int count = 0;
+        while (count < max) {
+            int slot = (int) next & mask;
+            T item = slots.get(slot);
+            if (item == null) {
+                return count;
+            }
+            slots.set(slot, null);
+            head = ++next;
+            count++;
+            consumer.accept(item);
+        }
+        return count;
+    }
+
+    int capacity() {
+        return slots.length();
+    }
+
+    boolean isEmpty() {
+        return tail.get() == head;
+    }
+}
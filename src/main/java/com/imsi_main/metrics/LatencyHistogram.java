@@ -0,0 +1,78 @@
+package com.imsi_main.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two microsecond buckets: bucket i counts
+ * latencies up to 2^i microseconds. Percentiles are reported as the bucket's upper bound.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 32;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = micros <= 1 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros - 1));
+        counts.incrementAndGet(bucket);
+        totalMicros.add(micros);
+        maxMicros.accumulate(micros);
+    }
+
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    public double meanMicros() {
+        long count = count();
+        return count == 0 ? 0 : (double) totalMicros.sum() / count;
+    }
+
+    public long maxMicros() {
+        return maxMicros.get();
+    }
+
+    public long percentileMicros(double percentile) {
+        long count = count();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100 * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(1L << i, maxMicros());
+            }
+        }
+        return maxMicros();
+    }
+
+    void appendJson(StringBuilder json) {
+        json.append("{\"count\":").append(count())
+                .append(",\"meanMicros\":").append(Math.round(meanMicros()))
+                .append(",\"p50Micros\":").append(percentileMicros(50))
+                .append(",\"p90Micros\":").append(percentileMicros(90))
+                .append(",\"p99Micros\":").append(percentileMicros(99))
+                .append(",\"maxMicros\":").append(maxMicros())
+                .append(",\"buckets\":{");
+        boolean first = true;
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = counts.get(i);
+            if (count > 0) {
+                json.append(first ? "" : ",").append("\"le").append(1L << i).append("us\":").append(count);
+                first = false;
+            }
+        }
+        json.append("}}");
+    }
+}
@@ -0,0 +1,39 @@
+package com.imsi_main.metrics;
+
+import com.imsi_main.database.ImsiLookup;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+// Counts lookups and records their latency; a batched call is one latency sample
+public class MeteredImsiLookup implements ImsiLookup {
+
+    private final ImsiLookup delegate;
+    private final Metrics metrics;
+
+    public MeteredImsiLookup(ImsiLookup delegate, Metrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public String getImsi(String msisdn) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getImsi(msisdn);
+        } finally {
+            metrics.lookup(1, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Map<String, String> getImsis(Collection<String> msisdns) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getImsis(msisdns);
+        } finally {
+            metrics.lookup(msisdns.size(), System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.imsi_main.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Totals of one program run: rows per output category, database lookups with their
+ * latency, bytes read and written, and wall time per stage. Pairs report into it when
+ * they finish; it is written as run_summary_<runId>.json and, in daemon mode, served
+ * over HTTP and JMX by {@link MetricsEndpoints}.
+ */
+public class Metrics implements MetricsMXBean {
+
+    private static final int RECENT_PAIRS = 100;
+
+    private final String runId;
+    private final long startMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final long logEveryRows;
+
+    private final LongAdder pairsProcessed = new LongAdder();
+    private final LongAdder pairsInvalid = new LongAdder();
+    private final LongAdder pairsFailed = new LongAdder();
+    private final LongAdder addRows = new LongAdder();
+    private final LongAdder delRows = new LongAdder();
+    private final LongAdder simChange = new LongAdder();
+    private final LongAdder hlrDeactivation = new LongAdder();
+    private final LongAdder hlrAdd = new LongAdder();
+    private final LongAdder hlrDel = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder lookupCalls = new LongAdder();
+    private final LongAdder lookupMsisdns = new LongAdder();
+    private final LatencyHistogram lookupLatency = new LatencyHistogram();
+    private final Map<String, Long> stageNanos = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final Deque<PairMetrics> recentPairs = new ArrayDeque<>();
+
+    public Metrics(Properties properties) {
+        this.runId = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date(startMillis));
+        this.logEveryRows = Long.parseLong(properties.getProperty("metrics.logEveryRows", "1000000"));
+    }
+
+    public PairMetrics startPair(String operator, String date) {
+        return new PairMetrics(operator, date, logEveryRows);
+    }
+
+    public void finishPair(PairMetrics pair, String status) {
+        pair.finish(status);
+        switch (status) {
+            case PairMetrics.PROCESSED:
+                pairsProcessed.increment();
+                break;
+            case PairMetrics.INVALID:
+                pairsInvalid.increment();
+                break;
+            default:
+                pairsFailed.increment();
+        }
+        addRows.add(pair.getAddRows());
+        delRows.add(pair.getDelRows());
+        simChange.add(pair.counts().getSimChange());
+        hlrDeactivation.add(pair.counts().getHlrDeactivation());
+        hlrAdd.add(pair.counts().getHlrAdd());
+        hlrDel.add(pair.counts().getHlrDel());
+        bytesRead.add(pair.getBytesRead());
+        bytesWritten.add(pair.getBytesWritten());
+        for (Map.Entry<String, Long> stage : pair.getStageNanos().entrySet()) {
+            stageNanos.merge(stage.getKey(), stage.getValue(), Long::sum);
+        }
+        synchronized (recentPairs) {
+            recentPairs.addLast(pair);
+            if (recentPairs.size() > RECENT_PAIRS) {
+                recentPairs.removeFirst();
+            }
+        }
+    }
+
+    void lookup(int msisdns, long nanos) {
+        lookupCalls.increment();
+        lookupMsisdns.add(msisdns);
+        lookupLatency.record(nanos);
+    }
+
+    // Replaces the summary file atomically, so a reader never sees a half written one
+    // Synchronized because operators running side by side refresh the same summary file
+    public synchronized Path writeSummary(Path dir) throws IOException {
+        Path summary = dir.resolve("run_summary_" + runId + ".json");
+        Path temp = dir.resolve(summary.getFileName() + ".tmp");
+        Files.write(temp, getSummaryJson().getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, summary, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return summary;
+    }
+
+    @Override
+    public String getSummaryJson() {
+        long elapsed = System.nanoTime() - startNanos;
+        StringBuilder json = new StringBuilder(4096);
+        json.append("{\"runId\":\"").append(runId).append('"')
+                .append(",\"started\":\"").append(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new Date(startMillis))).append('"')
+                .append(",\"seconds\":").append(PairMetrics.seconds(elapsed))
+                .append(",\"rowsPerSecond\":").append(Math.round(getRowsPerSecond()))
+                .append(",\"pairs\":{\"processed\":").append(pairsProcessed.sum())
+                .append(",\"invalid\":").append(pairsInvalid.sum())
+                .append(",\"failed\":").append(pairsFailed.sum())
+                .append("},\"rows\":{\"add\":").append(addRows.sum())
+                .append(",\"del\":").append(delRows.sum())
+                .append(",\"simChange\":").append(simChange.sum())
+                .append(",\"hlrDeactivation\":").append(hlrDeactivation.sum())
+                .append(",\"hlrAdd\":").append(hlrAdd.sum())
+                .append(",\"hlrDel\":").append(hlrDel.sum())
+                .append("},\"bytes\":{\"read\":").append(bytesRead.sum())
+                .append(",\"written\":").append(bytesWritten.sum())
+                .append("},\"stageSeconds\":{");
+        synchronized (stageNanos) {
+            boolean first = true;
+            for (Map.Entry<String, Long> stage : stageNanos.entrySet()) {
+                json.append(first ? "" : ",").append('"').append(stage.getKey()).append("\":").append(PairMetrics.seconds(stage.getValue()));
+                first = false;
+            }
+        }
+        json.append("},\"lookups\":{\"calls\":").append(lookupCalls.sum())
+                .append(",\"msisdns\":").append(lookupMsisdns.sum())
+                .append(",\"latency\":");
+        lookupLatency.appendJson(json);
+        json.append("},\"recentPairs\":[");
+        synchronized (recentPairs) {
+            boolean first = true;
+            for (PairMetrics pair : recentPairs) {
+                json.append(first ? "" : ",");
+                pair.appendJson(json);
+                first = false;
+            }
+        }
+        return json.append("]}").toString();
+    }
+
+    @Override
+    public String getRunId() {
+        return runId;
+    }
+
+    @Override
+    public long getPairsProcessed() {
+        return pairsProcessed.sum();
+    }
+
+    @Override
+    public long getPairsInvalid() {
+        return pairsInvalid.sum();
+    }
+
+    @Override
+    public long getPairsFailed() {
+        return pairsFailed.sum();
+    }
+
+    @Override
+    public long getAddRows() {
+        return addRows.sum();
+    }
+
+    @Override
+    public long getDelRows() {
+        return delRows.sum();
+    }
+
+    @Override
+    public long getSimChangeRows() {
+        return simChange.sum();
+    }
+
+    @Override
+    public long getHlrDeactivationRows() {
+        return hlrDeactivation.sum();
+    }
+
+    @Override
+    public long getHlrAddRows() {
+        return hlrAdd.sum();
+    }
+
+    @Override
+    public long getHlrDelRows() {
+        return hlrDel.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getLookupCalls() {
+        return lookupCalls.sum();
+    }
+
+    @Override
+    public long getLookupMsisdns() {
+        return lookupMsisdns.sum();
+    }
+
+    @Override
+    public long getLookupP50Micros() {
+        return lookupLatency.percentileMicros(50);
+    }
+
+    @Override
+    public long getLookupP99Micros() {
+        return lookupLatency.percentileMicros(99);
+    }
+
+    @Override
+    public double getRowsPerSecond() {
+        return PairMetrics.rowsPerSecond(addRows.sum() + delRows.sum(), System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,77 @@
+package com.imsi_main.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Optional live views of the run metrics for daemon mode: the summary JSON at
+ * http://{metrics.http.host}:{metrics.http.port}/metrics when a port is set, and the
+ * com.imsi_main:type=Metrics MXBean when metrics.jmx.enabled=true.
+ */
+public class MetricsEndpoints implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(MetricsEndpoints.class.getName());
+    private static final String OBJECT_NAME = "com.imsi_main:type=Metrics";
+
+    private HttpServer server;
+    private ObjectName registered;
+
+    public static MetricsEndpoints start(Metrics metrics, Properties properties) {
+        MetricsEndpoints endpoints = new MetricsEndpoints();
+        String port = properties.getProperty("metrics.http.port", "");
+        if (!port.isEmpty()) {
+            try {
+                endpoints.server = HttpServer.create(new InetSocketAddress(properties.getProperty("metrics.http.host", "127.0.0.1"), Integer.parseInt(port)), 0);
+                endpoints.server.createContext("/metrics", exchange -> {
+                    byte[] body = metrics.getSummaryJson().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                });
+                endpoints.server.start();
+                logger.info("Serving metrics on " + endpoints.server.getAddress() + "/metrics");
+            } catch (IOException e) {
+                logger.severe("Failed to start the metrics endpoint: " + e.getMessage());
+                endpoints.server = null;
+            }
+        }
+        if (Boolean.parseBoolean(properties.getProperty("metrics.jmx.enabled", "false"))) {
+            try {
+                MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+                endpoints.registered = new ObjectName(OBJECT_NAME);
+                mbeanServer.registerMBean(metrics, endpoints.registered);
+            } catch (JMException e) {
+                logger.severe("Failed to register the metrics MXBean: " + e.getMessage());
+                endpoints.registered = null;
+            }
+        }
+        return endpoints;
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (registered != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registered);
+            } catch (JMException e) {
+                logger.warning("Failed to unregister the metrics MXBean: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.imsi_main.metrics;
+
+// Run totals exposed over JMX as com.imsi_main:type=Metrics
+public interface MetricsMXBean {
+
+    String getRunId();
+
+    long getPairsProcessed();
+
+    long getPairsInvalid();
+
+    long getPairsFailed();
+
+    long getAddRows();
+
+    long getDelRows();
+
+    long getSimChangeRows();
+
+    long getHlrDeactivationRows();
+
+    long getHlrAddRows();
+
+    long getHlrDelRows();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    long getLookupCalls();
+
+    long getLookupMsisdns();
+
+    long getLookupP50Micros();
+
+    long getLookupP99Micros();
+
+    double getRowsPerSecond();
+
+    String getSummaryJson();
+}
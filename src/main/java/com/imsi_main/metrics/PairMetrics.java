@@ -0,0 +1,146 @@
+package com.imsi_main.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Counters and stage timings of one add/del pair. Updated only by the thread processing
+ * the pair and handed to {@link Metrics} when the pair is done. Progress is logged once
+ * every {@code metrics.logEveryRows} rows instead of once per row.
+ */
+public class PairMetrics {
+
+    private static final Logger logger = Logger.getLogger(PairMetrics.class.getName());
+
+    public static final String PROCESSED = "processed";
+    public static final String INVALID = "invalid";
+    public static final String FAILED = "failed";
+
+    private final String operator;
+    private final String date;
+    private final long logEveryRows;
+    private final long startNanos = System.nanoTime();
+    private final RowCounts counts = new RowCounts();
+    private final Map<String, Long> stageNanos = new LinkedHashMap<>();
+    private long addRows;
+    private long delRows;
+    private long nextProgress;
+    private long bytesRead;
+    private long bytesWritten;
+    private long wallNanos;
+    private String status;
+
+    PairMetrics(String operator, String date, long logEveryRows) {
+        this.operator = operator;
+        this.date = date;
+        this.logEveryRows = logEveryRows;
+        this.nextProgress = logEveryRows;
+    }
+
+    public String getOperator() {
+        return operator;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public RowCounts counts() {
+        return counts;
+    }
+
+    public void addRows(long rows) {
+        addRows += rows;
+    }
+
+    public void delRows(long rows) {
+        delRows += rows;
+        if (logEveryRows > 0 && delRows >= nextProgress) {
+            logger.info("Pair " + operator + " " + date + ": " + delRows + " del rows classified (" + counts.getSimChange() + " sim change, "
+                    + counts.getHlrDeactivation() + " HLR deactivation, " + counts.getHlrDel() + " hlr_del)");
+            nextProgress = (delRows / logEveryRows + 1) * logEveryRows;
+        }
+    }
+
+    public void bytesRead(long bytes) {
+        bytesRead += bytes;
+    }
+
+    public void bytesWritten(long bytes) {
+        bytesWritten += bytes;
+    }
+
+    // Records a stage's wall time and logs one summary line for it
+    public void stage(String stage, long stageStartNanos, long rows) {
+        long nanos = System.nanoTime() - stageStartNanos;
+        stageNanos.merge(stage, nanos, Long::sum);
+        logger.info(String.format(Locale.ROOT, "Pair %s %s %s stage: %d rows in %.3f s (%.0f rows/s)", operator, date, stage, rows, nanos / 1e9, rowsPerSecond(rows, nanos)));
+    }
+
+    void finish(String status) {
+        this.status = status;
+        this.wallNanos = System.nanoTime() - startNanos;
+    }
+
+    public long getAddRows() {
+        return addRows;
+    }
+
+    public long getDelRows() {
+        return delRows;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public Map<String, Long> getStageNanos() {
+        return stageNanos;
+    }
+
+    static double rowsPerSecond(long rows, long nanos) {
+        return nanos <= 0 ? 0 : rows * 1e9 / nanos;
+    }
+
+    void appendJson(StringBuilder json) {
+        // A pair whose file names carry no date is still reported, with a null date
+        json.append("{\"operator\":\"").append(operator).append('"')
+                .append(",\"date\":").append(date == null ? "null" : '"' + date + '"')
+                .append(",\"status\":\"").append(status).append('"')
+                .append(",\"seconds\":").append(seconds(wallNanos))
+                .append(",\"rowsPerSecond\":").append(Math.round(rowsPerSecond(addRows + delRows, wallNanos)))
+                .append(",\"rows\":{\"add\":").append(addRows)
+                .append(",\"del\":").append(delRows)
+                .append(",\"simChange\":").append(counts.getSimChange())
+                .append(",\"hlrDeactivation\":").append(counts.getHlrDeactivation())
+                .append(",\"hlrAdd\":").append(counts.getHlrAdd())
+                .append(",\"hlrDel\":").append(counts.getHlrDel())
+                .append("},\"bytes\":{\"read\":").append(bytesRead)
+                .append(",\"written\":").append(bytesWritten)
+                .append("},\"stageSeconds\":{");
+        boolean first = true;
+        for (Map.Entry<String, Long> stage : stageNanos.entrySet()) {
+            json.append(first ? "" : ",").append('"').append(stage.getKey()).append("\":").append(seconds(stage.getValue()));
+            first = false;
+        }
+        json.append("}}");
+    }
+
+    static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e9);
+    }
+}
@@ -0,0 +1,49 @@
+package com.imsi_main.metrics;
+
+// Rows written per output category; not thread safe, each writer thread keeps its own
+public class RowCounts {
+
+    private long simChange;
+    private long hlrDeactivation;
+    private long hlrAdd;
+    private long hlrDel;
+
+    public void simChange() {
+        simChange++;
+    }
+
+    public void hlrDeactivation() {
+        hlrDeactivation++;
+    }
+
+    public void hlrAdd(long rows) {
+        hlrAdd += rows;
+    }
+
+    public void hlrDel(long rows) {
+        hlrDel += rows;
+    }
+
+    public void add(RowCounts other) {
+        simChange += other.simChange;
+        hlrDeactivation += other.hlrDeactivation;
+        hlrAdd += other.hlrAdd;
+        hlrDel += other.hlrDel;
+    }
+
+    public long getSimChange() {
+        return simChange;
+    }
+
+    public long getHlrDeactivation() {
+        return hlrDeactivation;
+    }
+
+    public long getHlrAdd() {
+        return hlrAdd;
+    }
+
+    public long getHlrDel() {
+        return hlrDel;
+    }
+}
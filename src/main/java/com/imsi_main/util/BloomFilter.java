@@ -0,0 +1,54 @@
+package com.imsi_main.util;
+
+/**
+ * Bloom filter over longs: {@link #mightContain} is never false for an added key and is
+ * true for a key never added with a probability that depends on how full the filter is.
+ * Bit positions come from double hashing of one 64-bit mix of the key.
+ */
+public class BloomFilter {
+
+    private static final int HASHES = 4;
+
+    private final long[] bits;
+    private final long mask;
+
+    // The bit count is rounded down to a power of two
+    public BloomFilter(long bitCount) {
+        long size = Long.highestOneBit(Math.max(Long.SIZE, Math.min(bitCount, (long) Integer.MAX_VALUE * Long.SIZE)));
+        this.bits = new long[(int) (size / Long.SIZE)];
+        this.mask = size - 1;
+    }
+
+    public void add(long key) {
+        long hash = mix(key);
+        long step = mix(hash) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = hash & mask;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+            hash += step;
+        }
+    }
+
+    public boolean mightContain(long key) {
+        long hash = mix(key);
+        long step = mix(hash) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = hash & mask;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+            hash += step;
+        }
+        return true;
+    }
+
+    // MurmurHash3 finalizer
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb93fe1a85ec3L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -6,7 +6,7 @@ import java.util.*;
 public class CSVReader {
     public static List<String[]> readCSV(File file) throws IOException {
         List<String[]> lines = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(CompressedInput.open(file)))) {
             String line;
             while ((line = reader.readLine()) != null) {
                 lines.add(line.split(","));
@@ -14,4 +14,36 @@ public class CSVReader {
         }
         return lines;
     }
+
+    // Picks the read mode from csv.readMode: "stream" (default) or "mmap"; compressed files are always streamed
+    public static long forEachRow(File file, Properties properties, RowHandler handler) throws IOException {
+        return forEachRow(file, properties, 0, handler);
+    }
+
+    // Same as above, starting at a line start offset taken from CsvRow.endOffset()
+    public static long forEachRow(File file, Properties properties, long startOffset, RowHandler handler) throws IOException {
+        if ("mmap".equalsIgnoreCase(properties.getProperty("csv.readMode", "stream")) && Compression.detect(file) == Compression.NONE) {
+            return MappedCsvReader.fromProperties(properties).forEachRow(file, startOffset, handler);
+        }
+        try (CsvTokenizer tokenizer = CsvTokenizer.open(file, CsvTokenizer.separator(properties), startOffset)) {
+            while (tokenizer.next()) {
+                handler.handle(tokenizer);
+            }
+            return tokenizer.lineNumber();
+        }
+    }
+
+    public static long forEachRow(File file, RowHandler handler) throws IOException {
+        return forEachRow(file, CsvTokenizer.DEFAULT_SEPARATOR, handler);
+    }
+
+    // Streams the file line by line through a reused row view, nothing is kept after the handler returns
+    public static long forEachRow(File file, byte separator, RowHandler handler) throws IOException {
+        try (CsvTokenizer tokenizer = CsvTokenizer.open(file, separator)) {
+            while (tokenizer.next()) {
+                handler.handle(tokenizer);
+            }
+            return tokenizer.lineNumber();
+        }
+    }
 }
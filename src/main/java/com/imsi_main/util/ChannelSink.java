@@ -0,0 +1,33 @@
+package com.imsi_main.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Uncompressed output written straight from the row buffer to the file channel
+final class ChannelSink implements OutputSink {
+
+    private final FileChannel channel;
+
+    ChannelSink(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void write(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    @Override
+    public long checkpoint() throws IOException {
+        channel.force(false);
+        return channel.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
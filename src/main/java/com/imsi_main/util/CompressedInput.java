@@ -0,0 +1,151 @@
+package com.imsi_main.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Input stream over a gzip or zstd file. A background thread decompresses into blocks
+ * handed over through a bounded queue, so decompression runs ahead of the parser by at
+ * most {@link #QUEUE_BLOCKS} blocks and the two overlap instead of alternating.
+ */
+public final class CompressedInput extends InputStream {
+
+    private static final int BLOCK_SIZE = 256 * 1024;
+    private static final int QUEUE_BLOCKS = 8;
+    private static final byte[] END = new byte[0];
+
+    private final File file;
+    private final BlockingQueue<byte[]> filled = new ArrayBlockingQueue<>(QUEUE_BLOCKS + 1);
+    private final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(QUEUE_BLOCKS + 1);
+    private final Thread worker;
+    private volatile Throwable failure;
+    private volatile boolean closed;
+    private byte[] block;
+    private int position;
+
+    private CompressedInput(File file, Compression compression) {
+        this.file = file;
+        this.worker = new Thread(() -> decompress(compression), "decompress-" + file.getName());
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // Plain files are read directly; compressed ones are decompressed on a separate thread
+    public static InputStream open(File file) throws IOException {
+        Compression compression = Compression.detect(file);
+        return compression == Compression.NONE ? new FileInputStream(file) : new CompressedInput(file, compression);
+    }
+
+    private void decompress(Compression compression) {
+        try (InputStream in = compression.decompress(new FileInputStream(file))) {
+            while (!closed) {
+                byte[] next = free.poll();
+                if (next == null) {
+                    next = new byte[BLOCK_SIZE];
+                }
+                int length = in.readNBytes(next, 0, BLOCK_SIZE);
+                if (length > 0) {
+                    filled.put(length == BLOCK_SIZE ? next : Arrays.copyOf(next, length));
+                }
+                if (length < BLOCK_SIZE) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed by the reader
+        } catch (Throwable e) {
+            // Includes errors such as a missing zstd native library, which the reader must see rather than wait forever
+            failure = e;
+        } finally {
+            // The reader blocks until END arrives, so it is always queued unless the reader has closed the stream
+            while (!closed) {
+                try {
+                    filled.put(END);
+                    break;
+                } catch (InterruptedException e) {
+                    // Only close() interrupts, and it sets closed first
+                }
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBlock()) {
+            return -1;
+        }
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!nextBlock()) {
+            return -1;
+        }
+        int count = Math.min(length, block.length - position);
+        System.arraycopy(block, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    // Resuming from a checkpoint skips whole blocks without copying them
+    @Override
+    public long skip(long count) throws IOException {
+        long skipped = 0;
+        while (skipped < count && nextBlock()) {
+            int step = (int) Math.min(count - skipped, block.length - position);
+            position += step;
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    // False at the end of the data; rethrows a decompression failure instead of ending early
+    private boolean nextBlock() throws IOException {
+        if (block == END) {
+            return false;
+        }
+        if (block != null && position < block.length) {
+            return true;
+        }
+        if (block != null && block.length == BLOCK_SIZE) {
+            free.offer(block);
+        }
+        try {
+            block = filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + file.getName());
+        }
+        position = 0;
+        if (block == END) {
+            if (failure != null) {
+                throw new IOException("Failed to decompress " + file.getName() + ": "
+                        + (failure instanceof IOException ? failure.getMessage() : failure.toString()), failure);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+        // The worker closes the file, so wait for it rather than leave the file open behind the caller
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.imsi_main.util;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+// Compressed output written as one gzip member or zstd frame per checkpoint interval; readers treat the concatenation as a single stream
+final class CompressedSink implements OutputSink {
+
+    private final FileChannel channel;
+    private final Compression compression;
+    private final int level;
+    private final OutputStream file;
+    private final byte[] copy = new byte[64 * 1024];
+    private OutputStream member;
+
+    CompressedSink(FileChannel channel, Compression compression, int level) {
+        this.channel = channel;
+        this.compression = compression;
+        this.level = level;
+        // Closing a member must not close the channel
+        this.file = new FilterOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024)) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    @Override
+    public void write(ByteBuffer bytes) throws IOException {
+        if (member == null) {
+            member = compression.compress(file, level);
+        }
+        while (bytes.hasRemaining()) {
+            int length = Math.min(bytes.remaining(), copy.length);
+            bytes.get(copy, 0, length);
+            member.write(copy, 0, length);
+        }
+    }
+
+    @Override
+    public long checkpoint() throws IOException {
+        endMember();
+        channel.force(false);
+        return channel.position();
+    }
+
+    private void endMember() throws IOException {
+        if (member != null) {
+            member.close();
+            member = null;
+        }
+        file.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            endMember();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.imsi_main.util;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public enum Compression {
+    NONE(""),
+    GZIP(".gz"),
+    ZSTD(".zst");
+
+    private final String extension;
+
+    Compression(String extension) {
+        this.extension = extension;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    // A negative level keeps the codec's default
+    OutputStream compress(OutputStream out, int level) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new GZIPOutputStream(out, 64 * 1024) {
+                    {
+                        if (level >= 0) {
+                            def.setLevel(level);
+                        }
+                    }
+                };
+            case ZSTD:
+                return Zstd.compress(out, level);
+            default:
+                return out;
+        }
+    }
+
+    InputStream decompress(InputStream in) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new GZIPInputStream(in, 64 * 1024);
+            case ZSTD:
+                return Zstd.decompress(new BufferedInputStream(in, 64 * 1024));
+            default:
+                return in;
+        }
+    }
+
+    // Detected from the magic bytes, so misnamed files are read correctly too
+    public static Compression detect(File file) throws IOException {
+        byte[] magic = new byte[4];
+        int read;
+        try (InputStream in = new FileInputStream(file)) {
+            read = in.readNBytes(magic, 0, magic.length);
+        }
+        if (read >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) {
+            return GZIP;
+        }
+        if (read == 4 && (magic[0] & 0xFF) == 0x28 && (magic[1] & 0xFF) == 0xB5 && (magic[2] & 0xFF) == 0x2F && (magic[3] & 0xFF) == 0xFD) {
+            return ZSTD;
+        }
+        return NONE;
+    }
+
+    public static Compression fromName(String name) {
+        switch (name.toLowerCase()) {
+            case "none":
+                return NONE;
+            case "gzip":
+            case "gz":
+                return GZIP;
+            case "zstd":
+            case "zst":
+                return ZSTD;
+            default:
+                throw new IllegalArgumentException("Unknown compression: " + name);
+        }
+    }
+
+    // Loaded on first zstd use only, so plain and gzip files do not need the native zstd library
+    private static final class Zstd {
+        static OutputStream compress(OutputStream out, int level) throws IOException {
+            return level >= 0 ? new ZstdOutputStream(out, level) : new ZstdOutputStream(out);
+        }
+
+        static InputStream decompress(InputStream in) throws IOException {
+            return new ZstdInputStream(in);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.imsi_main.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+// Field helpers shared by the row views that keep fields as byte offsets
+final class CsvFields {
+
+    private CsvFields() {
+    }
+
+    static String decode(byte[] buffer, int start, int end, boolean escaped) {
+        String value = new String(buffer, start, end - start, StandardCharsets.UTF_8);
+        return escaped ? value.replace("\"\"", "\"") : value;
+    }
+
+    static boolean equals(byte[] buffer, int start, int end, boolean escaped, String value) {
+        if (escaped || !isAscii(value)) {
+            return decode(buffer, start, end, escaped).equals(value);
+        }
+        int length = end - start;
+        if (length != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer[start + i] != (byte) value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void copy(byte[] buffer, int start, int end, boolean escaped, RowWriter out) throws IOException {
+        if (escaped) {
+            out.append(decode(buffer, start, end, true));
+        } else {
+            out.write(buffer, start, end);
+        }
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
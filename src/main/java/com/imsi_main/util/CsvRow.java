@@ -0,0 +1,33 @@
+package com.imsi_main.util;
+
+import java.io.IOException;
+
+/**
+ * View over the fields of the current line. Instances are reused between lines, so
+ * callers must copy anything they want to keep with {@link #get(int)}.
+ */
+public interface CsvRow {
+
+    long lineNumber();
+
+    // Byte offset just past the current line, where reading can resume
+    long endOffset();
+
+    int size();
+
+    String get(int index);
+
+    boolean isEmpty(int index);
+
+    boolean fieldEquals(int index, String value);
+
+    // Field packed with NumericCodec, or NumericCodec.NOT_NUMERIC
+    default long encodeNumeric(int index) {
+        return NumericCodec.encode(get(index));
+    }
+
+    // Appends the field's value to the writer, as raw bytes where the view has them
+    default void copyTo(int index, RowWriter out) throws IOException {
+        out.append(get(index));
+    }
+}
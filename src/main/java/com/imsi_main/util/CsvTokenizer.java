@@ -0,0 +1,304 @@
+package com.imsi_main.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Splits CSV input into lines and fields directly on the raw bytes. Fields are kept as
+ * offsets into the read buffer and only turned into Strings when {@link #get(int)} is
+ * called. A field that starts with a double quote may contain separators, line breaks
+ * and doubled quotes.
+ */
+public class CsvTokenizer implements CsvRow, Closeable {
+
+    public static final byte DEFAULT_SEPARATOR = ',';
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final byte QUOTE = '"';
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private final InputStream input;
+    private final byte separator;
+
+    private byte[] buffer;
+    private int pos;
+    private long bufferOffset; // input offset of buffer[0]
+    private int limit;
+    private boolean eof;
+    private boolean openQuote;
+
+    private int lineStart;
+    private int lineEnd;
+    private long lineNumber;
+
+    private int fieldCount;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private boolean[] escaped = new boolean[16];
+
+    public CsvTokenizer(InputStream input, byte separator) {
+        this(input, separator, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CsvTokenizer(InputStream input, byte separator, int bufferSize) {
+        if (separator == QUOTE || separator == CR || separator == LF) {
+            throw new IllegalArgumentException("Unsupported separator: " + (char) separator);
+        }
+        this.input = input;
+        this.separator = separator;
+        this.buffer = new byte[Math.max(bufferSize, 16)];
+    }
+
+    // Tokenizes a byte range that is already in memory, without copying it
+    public CsvTokenizer(byte[] data, int offset, int length, byte separator) {
+        this(null, separator, 16);
+        this.buffer = data;
+        this.pos = offset;
+        this.bufferOffset = -offset;
+        this.limit = offset + length;
+        this.eof = true;
+    }
+
+    public static CsvTokenizer open(File file, byte separator) throws IOException {
+        return open(file, separator, 0);
+    }
+
+    // Starts reading at a byte offset that must be the start of a line; for compressed
+    // files the offset is into the decompressed data and is reached by skipping
+    public static CsvTokenizer open(File file, byte separator, long startOffset) throws IOException {
+        InputStream input = CompressedInput.open(file);
+        try {
+            if (input instanceof FileInputStream) {
+                ((FileInputStream) input).getChannel().position(startOffset);
+            } else {
+                input.skipNBytes(startOffset);
+            }
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+        CsvTokenizer tokenizer = new CsvTokenizer(input, separator);
+        tokenizer.bufferOffset = startOffset;
+        return tokenizer;
+    }
+
+    // Line numbers continue from the lines read before startOffset
+    void continueFrom(long linesBefore) {
+        lineNumber = linesBefore;
+    }
+
+    // True when the input ended inside a quoted field, which then runs to the end of the input
+    boolean endsInOpenQuote() {
+        return openQuote;
+    }
+
+    public static byte separator(Properties properties) {
+        String value = properties.getProperty("file.separator");
+        if (value == null || value.isEmpty()) {
+            return DEFAULT_SEPARATOR;
+        }
+        if (value.length() != 1 || value.charAt(0) > 0x7F) {
+            throw new IllegalArgumentException("file.separator must be a single ASCII character: " + value);
+        }
+        return (byte) value.charAt(0);
+    }
+
+    public boolean next() throws IOException {
+        while (true) {
+            if (eof && pos >= limit) {
+                return false;
+            }
+            if (scanLine()) {
+                lineNumber++;
+                return true;
+            }
+            fill();
+        }
+    }
+
+    // Tokenizes the line at pos; returns false when the buffer ends before the line does
+    private boolean scanLine() {
+        fieldCount = 0;
+        int i = pos;
+        int start = i;
+        boolean quoted = false;
+        boolean hasEscapes = false;
+        int quoteEnd = -1;
+        while (true) {
+            if (i >= limit) {
+                if (!eof) {
+                    return false;
+                }
+                openQuote = quoted && quoteEnd < 0;
+                int end = quoted ? (quoteEnd < 0 ? limit : quoteEnd) : trimCr(start, limit);
+                addField(start, end, hasEscapes);
+                finishLine(trimCr(pos, limit), limit);
+                return true;
+            }
+            byte b = buffer[i];
+            if (quoted && quoteEnd < 0) {
+                if (b == QUOTE) {
+                    if (i + 1 >= limit && !eof) {
+                        return false;
+                    }
+                    if (i + 1 < limit && buffer[i + 1] == QUOTE) {
+                        hasEscapes = true;
+                        i += 2;
+                        continue;
+                    }
+                    quoteEnd = i;
+                }
+                i++;
+                continue;
+            }
+            if (b == separator) {
+                addField(start, quoted ? quoteEnd : i, hasEscapes);
+                i++;
+                start = i;
+                quoted = false;
+                hasEscapes = false;
+                quoteEnd = -1;
+                continue;
+            }
+            if (b == LF) {
+                addField(start, quoted ? quoteEnd : trimCr(start, i), hasEscapes);
+                finishLine(trimCr(pos, i), i + 1);
+                return true;
+            }
+            if (i == start && b == QUOTE) {
+                quoted = true;
+                start = i + 1;
+            }
+            i++;
+        }
+    }
+
+    private int trimCr(int from, int end) {
+        return end > from && buffer[end - 1] == CR ? end - 1 : end;
+    }
+
+    private void finishLine(int end, int nextPos) {
+        lineStart = pos;
+        lineEnd = end;
+        pos = nextPos;
+    }
+
+    private void addField(int start, int end, boolean hasEscapes) {
+        if (fieldCount == starts.length) {
+            int capacity = fieldCount << 1;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            escaped = Arrays.copyOf(escaped, capacity);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        escaped[fieldCount] = hasEscapes;
+        fieldCount++;
+    }
+
+    private void fill() throws IOException {
+        if (pos > 0) {
+            bufferOffset += pos;
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length << 1);
+        }
+        int read = input.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    @Override
+    public long lineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public long endOffset() {
+        return bufferOffset + pos;
+    }
+
+    @Override
+    public int size() {
+        return fieldCount;
+    }
+
+    @Override
+    public String get(int index) {
+        checkIndex(index);
+        return CsvFields.decode(buffer, starts[index], ends[index], escaped[index]);
+    }
+
+    @Override
+    public boolean isEmpty(int index) {
+        checkIndex(index);
+        return starts[index] == ends[index];
+    }
+
+    @Override
+    public boolean fieldEquals(int index, String value) {
+        checkIndex(index);
+        return CsvFields.equals(buffer, starts[index], ends[index], escaped[index], value);
+    }
+
+    @Override
+    public long encodeNumeric(int index) {
+        checkIndex(index);
+        return NumericCodec.encode(buffer, starts[index], ends[index]);
+    }
+
+    @Override
+    public void copyTo(int index, RowWriter out) throws IOException {
+        checkIndex(index);
+        CsvFields.copy(buffer, starts[index], ends[index], escaped[index], out);
+    }
+
+    public String line() {
+        return new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+    }
+
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public int start(int index) {
+        checkIndex(index);
+        return starts[index];
+    }
+
+    public int end(int index) {
+        checkIndex(index);
+        return ends[index];
+    }
+
+    public boolean isEscaped(int index) {
+        checkIndex(index);
+        return escaped[index];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + index + " out of " + fieldCount + " on line " + lineNumber);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (input != null) {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.imsi_main.util;
+
+// Quoting for free-text values written into CSV files, such as messages and file names
+public final class CsvValues {
+
+    private CsvValues() {
+    }
+
+    public static String quote(String value) {
+        StringBuilder line = new StringBuilder();
+        append(value, line);
+        return line.toString();
+    }
+
+    // Quotes the value only when it contains a separator, a quote or a line break
+    public static void append(String value, StringBuilder line) {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+}
@@ -0,0 +1,169 @@
+package com.imsi_main.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.logging.Logger;
+
+/**
+ * Bounded-memory sort of text lines. Lines are buffered until the memory budget is
+ * reached, then sorted and spilled to a run file; the runs are k-way merged into the
+ * output at the end. The sort is stable: lines that compare equal keep the order in
+ * which they were added.
+ */
+public class ExternalSorter implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(ExternalSorter.class.getName());
+
+    private static final int MAX_FAN_IN = 64;
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    private final Comparator<String> comparator;
+    private final long memoryBudget;
+    private final Path tempDir;
+
+    private final List<String> buffer = new ArrayList<>();
+    private long bufferedBytes;
+    private final List<Path> runs = new ArrayList<>();
+
+    public ExternalSorter(Comparator<String> comparator, long memoryBudget, Path tempDir) {
+        this.comparator = comparator;
+        this.memoryBudget = memoryBudget;
+        this.tempDir = tempDir;
+    }
+
+    public void add(String line) throws IOException {
+        buffer.add(line);
+        bufferedBytes += estimateSize(line);
+        if (bufferedBytes >= memoryBudget) {
+            spill();
+        }
+    }
+
+    // Rough heap cost of a String held in the buffer list
+    private static long estimateSize(String line) {
+        return 64L + 2L * line.length();
+    }
+
+    private void spill() throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        buffer.sort(comparator);
+        Path run = Files.createTempFile(tempDir, "sort-run-", ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(run, StandardCharsets.UTF_8)) {
+            for (String line : buffer) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+        runs.add(run);
+        buffer.clear();
+        bufferedBytes = 0;
+    }
+
+    // Writes all added lines in sorted order to output, replacing it atomically
+    public void sortTo(Path output) throws IOException {
+        Path temp = output.resolveSibling(output.getFileName() + ".tmp");
+        if (runs.isEmpty()) {
+            buffer.sort(comparator);
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (String line : buffer) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+            buffer.clear();
+        } else {
+            spill();
+            logger.info("Merging " + runs.size() + " sorted runs into " + output);
+            // Merge consecutive groups level by level so earlier runs stay first
+            while (runs.size() > MAX_FAN_IN) {
+                List<Path> merged = new ArrayList<>();
+                for (int from = 0; from < runs.size(); from += MAX_FAN_IN) {
+                    List<Path> group = new ArrayList<>(runs.subList(from, Math.min(from + MAX_FAN_IN, runs.size())));
+                    Path run = Files.createTempFile(tempDir, "sort-run-", ".tmp");
+                    merge(group, run);
+                    merged.add(run);
+                }
+                runs.clear();
+                runs.addAll(merged);
+            }
+            merge(new ArrayList<>(runs), temp);
+            runs.clear();
+        }
+        Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Merges runs in order; ties go to the earlier run so the overall sort stays stable
+    private void merge(List<Path> inputs, Path output) throws IOException {
+        List<RunReader> readers = new ArrayList<>(inputs.size());
+        PriorityQueue<RunReader> queue = new PriorityQueue<>((a, b) -> {
+            int result = comparator.compare(a.line, b.line);
+            return result != 0 ? result : Integer.compare(a.order, b.order);
+        });
+        try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < inputs.size(); i++) {
+                RunReader reader = new RunReader(inputs.get(i), i);
+                readers.add(reader);
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                writer.write(reader.line);
+                writer.newLine();
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+            for (Path input : inputs) {
+                Files.deleteIfExists(input);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.clear();
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        runs.clear();
+    }
+
+    private static final class RunReader implements Closeable {
+        private final BufferedReader reader;
+        private final int order;
+        private String line;
+
+        RunReader(Path run, int order) throws IOException {
+            this.reader = new BufferedReader(Files.newBufferedReader(run, StandardCharsets.UTF_8), IO_BUFFER_SIZE);
+            this.order = order;
+        }
+
+        boolean advance() throws IOException {
+            line = reader.readLine();
+            return line != null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
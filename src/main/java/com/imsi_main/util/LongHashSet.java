@@ -0,0 +1,123 @@
+package com.imsi_main.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing set of longs, half the footprint of a {@link LongLongHashMap} used as a
+ * set. Key 0 is reserved as the empty slot marker. The table grows up to
+ * {@code maxCapacity} slots; {@link #isFull()} tells the caller to empty it before the
+ * next add would need more.
+ */
+public class LongHashSet {
+
+    private static final float LOAD_FACTOR = 0.6f;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int maxCapacity;
+    private long[] keys;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    public LongHashSet(int maxCapacity) {
+        this.maxCapacity = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(maxCapacity));
+        allocate(INITIAL_CAPACITY);
+    }
+
+    // Largest power of two table that fits in the given number of bytes
+    public static int capacityFor(long bytes) {
+        return (int) Math.min(1 << 30, Long.highestOneBit(Math.max(INITIAL_CAPACITY, bytes / Long.BYTES)));
+    }
+
+    // Returns false when the key was already in the set
+    public boolean add(long key) {
+        checkKey(key);
+        int slot = LongLongHashMap.mix(key) & mask;
+        long k;
+        while ((k = keys[slot]) != 0) {
+            if (k == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        if (++size >= resizeAt && keys.length < maxCapacity) {
+            rehash(keys.length << 1);
+        }
+        return true;
+    }
+
+    public boolean contains(long key) {
+        checkKey(key);
+        int slot = LongLongHashMap.mix(key) & mask;
+        long k;
+        while ((k = keys[slot]) != 0) {
+            if (k == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // True once the table is at its largest and loaded to the point where it would grow
+    public boolean isFull() {
+        return size >= resizeAt;
+    }
+
+    /**
+     * Moves the keys to the front of the table in ascending order and returns how many
+     * there are, for {@link #keyAt}. The set must be cleared before it is used again.
+     */
+    public int sortInPlace() {
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                keys[count++] = keys[i];
+            }
+        }
+        Arrays.sort(keys, 0, count);
+        Arrays.fill(keys, count, keys.length, 0L);
+        return count;
+    }
+
+    public long keyAt(int index) {
+        return keys[index];
+    }
+
+    // Shrinks back to the initial table so the memory is given back
+    public void clear() {
+        allocate(INITIAL_CAPACITY);
+        size = 0;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        allocate(newCapacity);
+        for (long key : oldKeys) {
+            if (key != 0) {
+                int slot = LongLongHashMap.mix(key) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static void checkKey(long key) {
+        if (key == 0) {
+            throw new IllegalArgumentException("Key 0 is reserved");
+        }
+    }
+}
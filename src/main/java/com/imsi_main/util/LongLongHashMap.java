@@ -0,0 +1,159 @@
+package com.imsi_main.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Open-addressing long to long map. Key 0 is reserved as the empty slot marker.
+ */
+public class LongLongHashMap {
+
+    public static final long NO_VALUE = Long.MIN_VALUE;
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    public LongLongHashMap() {
+        this(1024);
+    }
+
+    public LongLongHashMap(int expectedSize) {
+        int capacity = tableSizeFor((int) Math.min(1 << 30, (long) Math.ceil(expectedSize / LOAD_FACTOR)));
+        allocate(capacity);
+    }
+
+    public long get(long key) {
+        checkKey(key);
+        int slot = mix(key) & mask;
+        long k;
+        while ((k = keys[slot]) != 0) {
+            if (k == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NO_VALUE;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != NO_VALUE;
+    }
+
+    public long put(long key, long value) {
+        return insert(key, value, true);
+    }
+
+    public long putIfAbsent(long key, long value) {
+        return insert(key, value, false);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    // Writes the raw key table followed by the value table, readable with MappedLongLongTable
+    public void writeTables(WritableByteChannel channel) throws IOException {
+        writeArray(keys, channel);
+        writeArray(values, channel);
+    }
+
+    private static void writeArray(long[] array, WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        for (long value : array) {
+            if (!buffer.hasRemaining()) {
+                flush(buffer, channel);
+            }
+            buffer.putLong(value);
+        }
+        flush(buffer, channel);
+    }
+
+    private static void flush(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        size = 0;
+    }
+
+    private long insert(long key, long value, boolean overwrite) {
+        checkKey(key);
+        int slot = mix(key) & mask;
+        long k;
+        while ((k = keys[slot]) != 0) {
+            if (k == key) {
+                long previous = values[slot];
+                if (overwrite) {
+                    values[slot] = value;
+                }
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size >= resizeAt) {
+            rehash(keys.length << 1);
+        }
+        return NO_VALUE;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != 0) {
+                int slot = mix(key) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static void checkKey(long key) {
+        if (key == 0) {
+            throw new IllegalArgumentException("Key 0 is reserved");
+        }
+    }
+
+    static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int tableSizeFor(int n) {
+        int capacity = 16;
+        while (capacity < n) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
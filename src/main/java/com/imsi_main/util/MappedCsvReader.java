@@ -0,0 +1,153 @@
+package com.imsi_main.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Reads a file through memory-mapped regions cut at line boundaries. Regions are
+ * tokenized on a pool of worker threads while the caller's thread hands the rows to
+ * the handler strictly in file order. Regions are cut at their last line feed, which may
+ * be inside a quoted field; such a region is found when it is parsed, before any of its
+ * rows are handed over, and the rest of the file is then read as a stream from its start.
+ */
+public class MappedCsvReader {
+
+    private static final Logger logger = Logger.getLogger(MappedCsvReader.class.getName());
+
+    private static final int MB = 1024 * 1024;
+
+    private final byte separator;
+    private final int chunkSize;
+    private final int threads;
+
+    public MappedCsvReader(byte separator, int chunkSize, int threads) {
+        this.separator = separator;
+        this.chunkSize = chunkSize;
+        this.threads = threads;
+    }
+
+    public static MappedCsvReader fromProperties(Properties properties) {
+        int chunkSizeMb = Integer.parseInt(properties.getProperty("csv.mmap.chunkSizeMb", "8"));
+        int threads = Integer.parseInt(properties.getProperty("csv.parse.threads", "0"));
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        return new MappedCsvReader(CsvTokenizer.separator(properties), chunkSizeMb * MB, threads);
+    }
+
+    public long forEachRow(File file, RowHandler handler) throws IOException {
+        return forEachRow(file, 0, handler);
+    }
+
+    // startOffset must be the start of a line; line numbers count from there
+    public long forEachRow(File file, long startOffset, RowHandler handler) throws IOException {
+        int inFlight = threads + 1;
+        Deque<ParsedChunk> free = new ArrayDeque<>(inFlight);
+        for (int i = 0; i < inFlight; i++) {
+            free.add(new ParsedChunk());
+        }
+        Deque<Future<ParsedChunk>> pending = new ArrayDeque<>(inFlight);
+        ExecutorService pool = Executors.newFixedThreadPool(threads, daemonThreads(file.getName()));
+        long lineNumber = 0;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = startOffset;
+            while (position < size || !pending.isEmpty()) {
+                while (position < size && !free.isEmpty()) {
+                    MappedByteBuffer region = mapLines(channel, position, size);
+                    long regionPosition = position;
+                    position += region.remaining();
+                    ParsedChunk chunk = free.poll();
+                    pending.add(pool.submit(() -> {
+                        chunk.parse(region, regionPosition, separator);
+                        return chunk;
+                    }));
+                }
+                ParsedChunk chunk = await(pending.poll());
+                if (chunk.endsInOpenQuote() && chunk.end() < size) {
+                    // The regions after this one start inside the quoted field and were parsed wrongly
+                    logger.info("Quoted line break at offset " + chunk.end() + " in " + file.getName() + ", reading the rest as a stream");
+                    return stream(file, chunk.start(), lineNumber, handler);
+                }
+                chunk.rewind(lineNumber + 1);
+                while (chunk.next()) {
+                    handler.handle(chunk);
+                }
+                lineNumber += chunk.lineCount();
+                free.add(chunk);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return lineNumber;
+    }
+
+    private long stream(File file, long position, long linesBefore, RowHandler handler) throws IOException {
+        try (CsvTokenizer tokenizer = CsvTokenizer.open(file, separator, position)) {
+            tokenizer.continueFrom(linesBefore);
+            while (tokenizer.next()) {
+                handler.handle(tokenizer);
+            }
+            return tokenizer.lineNumber();
+        }
+    }
+
+    // Maps from position up to and including the last line feed that fits, growing the region for very long lines
+    private MappedByteBuffer mapLines(FileChannel channel, long position, long size) throws IOException {
+        long length = Math.min(chunkSize, size - position);
+        while (true) {
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            if (position + length == size) {
+                return region;
+            }
+            for (int i = (int) length - 1; i >= 0; i--) {
+                if (region.get(i) == '\n') {
+                    region.limit(i + 1);
+                    return region;
+                }
+            }
+            if (length == Integer.MAX_VALUE) {
+                throw new IOException("Line longer than " + Integer.MAX_VALUE + " bytes at offset " + position);
+            }
+            length = Math.min(Math.min(length << 1, Integer.MAX_VALUE), size - position);
+        }
+    }
+
+    private static ParsedChunk await(Future<ParsedChunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException("Failed to parse region: " + cause.getMessage(), cause);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "csv-parse-" + name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,36 @@
+package com.imsi_main.util;
+
+import java.nio.LongBuffer;
+
+/**
+ * Read-only view of the tables written by {@link LongLongHashMap#writeTables}, usually
+ * backed by a memory-mapped file so the entries stay off the Java heap.
+ */
+public class MappedLongLongTable {
+
+    private final LongBuffer keys;
+    private final LongBuffer values;
+    private final int mask;
+
+    public MappedLongLongTable(LongBuffer keys, LongBuffer values) {
+        int capacity = keys.capacity();
+        if (Integer.bitCount(capacity) != 1 || values.capacity() != capacity) {
+            throw new IllegalArgumentException("Table capacity must be a power of two: " + capacity);
+        }
+        this.keys = keys;
+        this.values = values;
+        this.mask = capacity - 1;
+    }
+
+    public long get(long key) {
+        int slot = LongLongHashMap.mix(key) & mask;
+        long k;
+        while ((k = keys.get(slot)) != 0) {
+            if (k == key) {
+                return values.get(slot);
+            }
+            slot = (slot + 1) & mask;
+        }
+        return LongLongHashMap.NO_VALUE;
+    }
+}
@@ -0,0 +1,63 @@
+package com.imsi_main.util;
+
+/**
+ * Packs a digit string of up to 17 characters into a long, keeping its length so
+ * leading zeros survive the round trip. Encoded values are never 0.
+ */
+public final class NumericCodec {
+
+    public static final long NOT_NUMERIC = 0L;
+
+    private static final int MAX_DIGITS = 17;
+    private static final int LENGTH_SHIFT = 57;
+    private static final long VALUE_MASK = (1L << LENGTH_SHIFT) - 1;
+
+    private NumericCodec() {
+    }
+
+    public static long encode(CharSequence value) {
+        if (value == null) {
+            return NOT_NUMERIC;
+        }
+        int length = value.length();
+        if (length == 0 || length > MAX_DIGITS) {
+            return NOT_NUMERIC;
+        }
+        long result = 0;
+        for (int i = 0; i < length; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return NOT_NUMERIC;
+            }
+            result = result * 10 + digit;
+        }
+        return ((long) length << LENGTH_SHIFT) | result;
+    }
+
+    public static long encode(byte[] buffer, int start, int end) {
+        int length = end - start;
+        if (length <= 0 || length > MAX_DIGITS) {
+            return NOT_NUMERIC;
+        }
+        long result = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return NOT_NUMERIC;
+            }
+            result = result * 10 + digit;
+        }
+        return ((long) length << LENGTH_SHIFT) | result;
+    }
+
+    public static String decode(long encoded) {
+        int length = (int) (encoded >>> LENGTH_SHIFT);
+        char[] chars = new char[length];
+        long value = encoded & VALUE_MASK;
+        for (int i = length - 1; i >= 0; i--) {
+            chars[i] = (char) ('0' + (value % 10));
+            value /= 10;
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,34 @@
+package com.imsi_main.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Destination for encoded output bytes. A checkpoint leaves the file at a point where it
+ * can be cut back to and appended to again, which for compressed output means the end of
+ * a complete gzip member or zstd frame.
+ */
+public interface OutputSink extends Closeable {
+
+    void write(ByteBuffer bytes) throws IOException;
+
+    // Makes everything written so far durable and returns the file size
+    long checkpoint() throws IOException;
+
+    // Opens the file, cut back to startSize when appending after a checkpoint
+    static OutputSink open(Path path, Compression compression, int level, long startSize) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            channel.truncate(startSize);
+            channel.position(startSize);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return compression == Compression.NONE ? new ChannelSink(channel) : new CompressedSink(channel, compression, level);
+    }
+}
@@ -0,0 +1,157 @@
+package com.imsi_main.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// A block of whole lines copied out of a mapped region, tokenized into flat offset arrays
+final class ParsedChunk implements CsvRow {
+
+    private byte[] data = new byte[0];
+    private int length;
+
+    private long position;
+    private int lineCount;
+    private boolean openQuote;
+    private int[] lineFields = new int[1024];
+    private int[] lineEnds = new int[1024];
+    private int[] starts = new int[8192];
+    private int[] ends = new int[8192];
+    private boolean[] escaped = new boolean[8192];
+
+    private int line;
+    private int firstField;
+    private int fieldCount;
+    private long lineNumber;
+
+    void parse(ByteBuffer region, long position, byte separator) {
+        this.position = position;
+        length = region.remaining();
+        if (data.length < length) {
+            data = new byte[length];
+        }
+        region.get(data, 0, length);
+
+        lineCount = 0;
+        int fields = 0;
+        CsvTokenizer tokenizer = new CsvTokenizer(data, 0, length, separator);
+        try {
+            while (tokenizer.next()) {
+                int size = tokenizer.size();
+                ensureCapacity(fields + size);
+                if (lineCount + 1 >= lineFields.length) {
+                    lineFields = Arrays.copyOf(lineFields, lineFields.length << 1);
+                    lineEnds = Arrays.copyOf(lineEnds, lineFields.length);
+                }
+                lineEnds[lineCount] = (int) tokenizer.endOffset();
+                lineFields[lineCount++] = fields;
+                for (int i = 0; i < size; i++) {
+                    starts[fields] = tokenizer.start(i);
+                    ends[fields] = tokenizer.end(i);
+                    escaped[fields] = tokenizer.isEscaped(i);
+                    fields++;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        lineFields[lineCount] = fields;
+        openQuote = tokenizer.endsInOpenQuote();
+    }
+
+    // Positions the row view on the first line; line numbers continue from firstLineNumber
+    void rewind(long firstLineNumber) {
+        line = -1;
+        lineNumber = firstLineNumber - 1;
+    }
+
+    boolean next() {
+        if (line + 1 >= lineCount) {
+            return false;
+        }
+        line++;
+        lineNumber++;
+        firstField = lineFields[line];
+        fieldCount = lineFields[line + 1] - firstField;
+        return true;
+    }
+
+    int lineCount() {
+        return lineCount;
+    }
+
+    long start() {
+        return position;
+    }
+
+    long end() {
+        return position + length;
+    }
+
+    // True when the region was cut inside a quoted field, so its last line is incomplete
+    boolean endsInOpenQuote() {
+        return openQuote;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > starts.length) {
+            int capacity = Math.max(required, starts.length << 1);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            escaped = Arrays.copyOf(escaped, capacity);
+        }
+    }
+
+    @Override
+    public long lineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public long endOffset() {
+        return position + lineEnds[line];
+    }
+
+    @Override
+    public int size() {
+        return fieldCount;
+    }
+
+    @Override
+    public String get(int index) {
+        int field = field(index);
+        return CsvFields.decode(data, starts[field], ends[field], escaped[field]);
+    }
+
+    @Override
+    public boolean isEmpty(int index) {
+        int field = field(index);
+        return starts[field] == ends[field];
+    }
+
+    @Override
+    public boolean fieldEquals(int index, String value) {
+        int field = field(index);
+        return CsvFields.equals(data, starts[field], ends[field], escaped[field], value);
+    }
+
+    @Override
+    public long encodeNumeric(int index) {
+        int field = field(index);
+        return NumericCodec.encode(data, starts[field], ends[field]);
+    }
+
+    @Override
+    public void copyTo(int index, RowWriter out) throws IOException {
+        int field = field(index);
+        CsvFields.copy(data, starts[field], ends[field], escaped[field], out);
+    }
+
+    private int field(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + index + " out of " + fieldCount + " on line " + lineNumber);
+        }
+        return firstField + index;
+    }
+}
@@ -0,0 +1,8 @@
+package com.imsi_main.util;
+
+import java.io.IOException;
+
+@FunctionalInterface
+public interface RowHandler {
+    void handle(CsvRow row) throws IOException;
+}
@@ -0,0 +1,160 @@
+package com.imsi_main.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ * Writer that encodes characters straight to UTF-8 in a direct buffer and hands full
+ * buffers to an {@link OutputSink}. Rows can be built field by field, copying fields
+ * from a {@link CsvRow} as raw bytes, without joining them into Strings first.
+ */
+public class RowWriter extends Writer {
+
+    private static final byte FIELD_SEPARATOR = ',';
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+
+    private final OutputSink sink;
+    private final ByteBuffer buffer;
+    private boolean rowStarted;
+
+    public RowWriter(OutputSink sink, int bufferSize) {
+        this.sink = sink;
+        this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, 16));
+    }
+
+    public RowWriter field(CharSequence value) throws IOException {
+        separate();
+        append(value);
+        return this;
+    }
+
+    public RowWriter field(CsvRow row, int index) throws IOException {
+        separate();
+        row.copyTo(index, this);
+        return this;
+    }
+
+    public RowWriter field(byte[] bytes, int start, int end) throws IOException {
+        separate();
+        write(bytes, start, end);
+        return this;
+    }
+
+    public void endRow() throws IOException {
+        newLine();
+    }
+
+    public void newLine() throws IOException {
+        write(LINE_SEPARATOR, 0, LINE_SEPARATOR.length);
+        rowStarted = false;
+    }
+
+    // Raw bytes, already encoded
+    void write(byte[] bytes, int start, int end) throws IOException {
+        while (start < end) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            int length = Math.min(end - start, buffer.remaining());
+            buffer.put(bytes, start, length);
+            start += length;
+        }
+    }
+
+    private void separate() throws IOException {
+        if (rowStarted) {
+            put(FIELD_SEPARATOR);
+        }
+        rowStarted = true;
+    }
+
+    @Override
+    public Writer append(CharSequence value) throws IOException {
+        CharSequence chars = value == null ? "null" : value;
+        for (int i = 0; i < chars.length(); i++) {
+            i = encode(chars, i);
+        }
+        return this;
+    }
+
+    @Override
+    public void write(String value) throws IOException {
+        append(value);
+    }
+
+    @Override
+    public void write(String value, int off, int len) throws IOException {
+        append(value, off, off + len);
+    }
+
+    @Override
+    public void write(char[] chars, int off, int len) throws IOException {
+        append(CharBuffer.wrap(chars, off, len));
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        append(String.valueOf((char) c));
+    }
+
+    // Encodes the character at index (two for a surrogate pair) and returns the last index consumed
+    private int encode(CharSequence chars, int index) throws IOException {
+        char c = chars.charAt(index);
+        if (c < 0x80) {
+            put((byte) c);
+        } else if (c < 0x800) {
+            put((byte) (0xC0 | (c >> 6)));
+            put((byte) (0x80 | (c & 0x3F)));
+        } else if (Character.isHighSurrogate(c) && index + 1 < chars.length() && Character.isLowSurrogate(chars.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, chars.charAt(++index));
+            put((byte) (0xF0 | (codePoint >> 18)));
+            put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+            put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            put((byte) (0x80 | (codePoint & 0x3F)));
+        } else if (Character.isSurrogate(c)) {
+            put((byte) '?'); // Unpaired surrogate, as String.getBytes would write it
+        } else {
+            put((byte) (0xE0 | (c >> 12)));
+            put((byte) (0x80 | ((c >> 6) & 0x3F)));
+            put((byte) (0x80 | (c & 0x3F)));
+        }
+        return index;
+    }
+
+    private void put(byte b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.put(b);
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        sink.write(buffer);
+        buffer.clear();
+    }
+
+    // Hands buffered bytes to the sink; they are durable only after checkpoint()
+    @Override
+    public void flush() throws IOException {
+        if (buffer.position() > 0) {
+            drain();
+        }
+    }
+
+    public long checkpoint() throws IOException {
+        flush();
+        return sink.checkpoint();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            sink.close();
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package com.imsi_main.validation;
 
+import com.imsi_main.util.CSVReader;
+import com.imsi_main.util.CsvRow;
+import com.imsi_main.util.CsvTokenizer;
+
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -7,19 +11,73 @@ import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
 public class FileValidator {
     private static final Logger logger = Logger.getLogger(FileValidator.class.getName());
     private Properties properties;
+    private final boolean enabled;
+    private final long memoryBytes;
+    private final Path spillDir;
 
     public FileValidator(Properties properties) {
         this.properties = properties;
+        this.enabled = Boolean.parseBoolean(properties.getProperty("validation.enabled", "true"));
+        // validation.memoryMb is shared by the key columns of one file; keys beyond it spill to validation.spillDir
+        this.memoryBytes = Long.parseLong(properties.getProperty("validation.memoryMb", "256")) << 20;
+        String spill = properties.getProperty("validation.spillDir", "");
+        this.spillDir = Paths.get(spill.isEmpty() ? System.getProperty("java.io.tmpdir") : spill);
+    }
+
+    // Validator for the add file read that also builds the join lookups
+    public RowValidator addFileValidator(File addFile) {
+        return enabled ? newAddFileValidator(addFile) : RowValidator.NONE;
+    }
+
+    // Validator for the del file read; fromStart is false when resuming past the header
+    public RowValidator delFileValidator(File delFile, boolean fromStart) {
+        if (!enabled) {
+            return RowValidator.NONE;
+        }
+        String[] header = splitHeader(properties.getProperty("header.delFile"));
+        return new RowValidator(delFile.getName(), fromStart ? header : null, header.length,
+                new int[]{resolveColumn(properties.getProperty("delFilePath.msisdn"), header)},
+                new String[]{"MSISDN"}, memoryBytes, spillDir, rejectsPath(delFile));
+    }
+
+    private RowValidator newAddFileValidator(File addFile) {
+        String[] header = splitHeader(properties.getProperty("header.addFile"));
+        return new RowValidator(addFile.getName(), header, header.length,
+                new int[]{resolveColumn(properties.getProperty("addFilePath.msisdn"), header),
+                        resolveColumn(properties.getProperty("addFilePath.imsi"), header)},
+                new String[]{"MSISDN", "IMSI"}, memoryBytes / 2, spillDir, rejectsPath(addFile));
+    }
+
+    // Duplicate keys are listed next to where the file ends up when it fails
+    private Path rejectsPath(File file) {
+        String dir = properties.getProperty("fileCorruptPath", file.getAbsoluteFile().getParent());
+        return Paths.get(dir, file.getName() + ".rejects.csv");
+    }
+
+    private String[] splitHeader(String header) {
+        return header.split(Pattern.quote(String.valueOf((char) CsvTokenizer.separator(properties))), -1);
+    }
+
+    // Columns are configured either by index or by header name
+    private static int resolveColumn(String column, String[] header) {
+        if (!column.isEmpty() && column.chars().allMatch(Character::isDigit)) {
+            return Integer.parseInt(column);
+        }
+        int index = Arrays.asList(header).indexOf(column);
+        if (index == -1) {
+            throw new IllegalArgumentException("Column " + column + " is not in the expected header");
+        }
+        return index;
     }
 
     public boolean validateHeaders(File file, String expectedHeader) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String header = reader.readLine();
-            return expectedHeader.equals(header);
+        try (CsvTokenizer tokenizer = CsvTokenizer.open(file, CsvTokenizer.separator(properties))) {
+            return tokenizer.next() && expectedHeader.equals(tokenizer.line());
         } catch (IOException e) {
             logger.severe("Failed to read file: " + file.getName() + " (" + e.getMessage() + ")");
             return false;
@@ -27,76 +85,94 @@ public class FileValidator {
     }
 
     public boolean validateContents(File file, String msisdnColumn, String imsiColumn, String dateColumn) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String header = reader.readLine();
-            String[] columns = header.split(properties.getProperty("file.separator"));
-
-            int msisdnIndex = getIndex(columns, msisdnColumn);
-            int imsiIndex = getIndex(columns, imsiColumn);
-            int dateIndex = getIndex(columns, dateColumn);
+        try (CsvTokenizer reader = CsvTokenizer.open(file, CsvTokenizer.separator(properties))) {
+            if (!reader.next()) {
+                return false;
+            }
+            int msisdnIndex = getIndex(reader, msisdnColumn);
+            int imsiIndex = getIndex(reader, imsiColumn);
+            int dateIndex = getIndex(reader, dateColumn);
 
             if (msisdnIndex == -1 || imsiIndex == -1 || dateIndex == -1) {
                 return false;
             }
 
-            Set<String> msisdnSet = new HashSet<>();
-            Set<String> imsiSet = new HashSet<>();
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] values = line.split(properties.getProperty("file.separator"));
-
-                if (values[msisdnIndex].isEmpty() || values[imsiIndex].isEmpty()) {
-                    return false;
-                }
-
-                if (!msisdnSet.add(values[msisdnIndex]) || !imsiSet.add(values[imsiIndex])) {
-                    return false;
+            try (UniqueKeys msisdnSet = new UniqueKeys(memoryBytes / 2, spillDir);
+                 UniqueKeys imsiSet = new UniqueKeys(memoryBytes / 2, spillDir);
+                 RejectsFile rejects = new RejectsFile(rejectsPath(file))) {
+                while (reader.next()) {
+                    if (isMissing(reader, msisdnIndex) || isMissing(reader, imsiIndex)) {
+                        return false;
+                    }
+
+                    if (!msisdnSet.add(reader, msisdnIndex)) {
+                        rejects.reject("MSISDN", reader.get(msisdnIndex), reader.lineNumber());
+                    }
+                    if (!imsiSet.add(reader, imsiIndex)) {
+                        rejects.reject("IMSI", reader.get(imsiIndex), reader.lineNumber());
+                    }
                 }
+                msisdnSet.finish((key, lineNumber) -> rejects.reject("MSISDN", key, lineNumber));
+                imsiSet.finish((key, lineNumber) -> rejects.reject("IMSI", key, lineNumber));
+                return noRejects(file, rejects);
             }
-            return true;
         } catch (IOException e) {
             logger.severe("Failed to read file: " + file.getName() + " (" + e.getMessage() + ")");
             return false;
         }
     }
 
-    private int getIndex(String[] columns, String column) {
-        for (int i = 0; i < columns.length; i++) {
-            if (columns[i].equals(column)) {
+    private int getIndex(CsvRow columns, String column) {
+        if (!column.isEmpty() && column.chars().allMatch(Character::isDigit)) {
+            int index = Integer.parseInt(column);
+            return index < columns.size() ? index : -1;
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.fieldEquals(i, column)) {
                 return i;
             }
         }
         return -1;
     }
 
-    public boolean validateContents(File file, String msisdnColumn, String dateColumn) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String header = reader.readLine();
-            String[] columns = header.split(properties.getProperty("file.separator"));
+    private static boolean noRejects(File file, RejectsFile rejects) {
+        if (rejects.count() == 0) {
+            return true;
+        }
+        logger.severe(rejects.count() + " duplicate keys in file: " + file.getName() + ", listed in " + rejects.getPath());
+        return false;
+    }
 
-            int msisdnIndex = getIndex(columns, msisdnColumn);
-            int dateIndex = getIndex(columns, dateColumn);
+    private boolean isMissing(CsvRow values, int index) {
+        return index >= values.size() || values.isEmpty(index);
+    }
 
-            if (msisdnIndex == -1 || dateIndex == -1) {
+    public boolean validateContents(File file, String msisdnColumn, String dateColumn) {
+        try (CsvTokenizer reader = CsvTokenizer.open(file, CsvTokenizer.separator(properties))) {
+            if (!reader.next()) {
                 return false;
             }
+            int msisdnIndex = getIndex(reader, msisdnColumn);
+            int dateIndex = getIndex(reader, dateColumn);
 
-            Set<String> msisdnSet = new HashSet<>();
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] values = line.split(properties.getProperty("file.separator"));
+            if (msisdnIndex == -1 || dateIndex == -1) {
+                return false;
+            }
 
-                if (values[msisdnIndex].isEmpty()) {
-                    return false;
-                }
+            try (UniqueKeys msisdnSet = new UniqueKeys(memoryBytes, spillDir);
+                 RejectsFile rejects = new RejectsFile(rejectsPath(file))) {
+                while (reader.next()) {
+                    if (isMissing(reader, msisdnIndex)) {
+                        return false;
+                    }
 
-                if (!msisdnSet.add(values[msisdnIndex])) {
-                    return false;
+                    if (!msisdnSet.add(reader, msisdnIndex)) {
+                        rejects.reject("MSISDN", reader.get(msisdnIndex), reader.lineNumber());
+                    }
                 }
+                msisdnSet.finish((key, lineNumber) -> rejects.reject("MSISDN", key, lineNumber));
+                return noRejects(file, rejects);
             }
-            return true;
         } catch (IOException e) {
             logger.severe("Failed to read file: " + file.getName() + " (" + e.getMessage() + ")");
             return false;
@@ -104,8 +180,17 @@ public class FileValidator {
     }
 
     public boolean validateAddFile(File addFile) {
-        return validateHeaders(addFile, properties.getProperty("header.addFile")) &&
-                validateContents(addFile, properties.getProperty("addFilePath.msisdn"), properties.getProperty("addFilePath.imsi"), properties.getProperty("addFilePath.created_date"));
+        try (RowValidator validator = newAddFileValidator(addFile)) {
+            CSVReader.forEachRow(addFile, properties, validator::check);
+            validator.finish();
+            return true;
+        } catch (InvalidFileException e) {
+            logger.severe(e.getMessage());
+            return false;
+        } catch (IOException e) {
+            logger.severe("Failed to read file: " + addFile.getName() + " (" + e.getMessage() + ")");
+            return false;
+        }
     }
 
     public void moveFileToCorruptFolder(File file) {
@@ -0,0 +1,13 @@
+package com.imsi_main.validation;
+
+import java.io.IOException;
+
+// Thrown while streaming a file whose header or key columns fail validation
+public class InvalidFileException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public InvalidFileException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,49 @@
+package com.imsi_main.validation;
+
+import com.imsi_main.util.CsvValues;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Duplicate keys of one file, one Column,Key,Line row each; created on the first reject, so clean files leave none
+class RejectsFile implements Closeable {
+
+    private final Path path;
+    private BufferedWriter writer;
+    private long count;
+
+    RejectsFile(Path path) {
+        this.path = path;
+    }
+
+    void reject(String column, String key, long lineNumber) throws IOException {
+        if (writer == null) {
+            writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+            writer.write("Column,Key,Line");
+            writer.newLine();
+        }
+        writer.write(CsvValues.quote(column) + "," + CsvValues.quote(key) + "," + lineNumber);
+        writer.newLine();
+        count++;
+    }
+
+    long count() {
+        return count;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.imsi_main.validation;
+
+import com.imsi_main.util.CsvRow;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Validates a file row by row while it is being processed, so the header, empty key and
+ * duplicate key checks share the read that builds the outputs instead of each reading
+ * the file again. A bad header, a row whose width differs from the header or an empty
+ * key throws {@link InvalidFileException} at once; duplicate keys are written to a rejects file and the read goes on, so
+ * {@link #finish} can report all of them before it fails the file.
+ */
+public class RowValidator implements Closeable {
+
+    // Used when validation.enabled=false
+    public static final RowValidator NONE = new RowValidator(null, null, 0, new int[0], new String[0], 0, null, null) {
+        @Override
+        public void check(CsvRow row) {
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private final String fileName;
+    private final String[] expectedHeader;
+    private final int columns;
+    private final int[] keyColumns;
+    private final String[] keyNames;
+    private final UniqueKeys[] seen;
+    private final RejectsFile rejects;
+    private String firstDuplicate;
+    private boolean headerChecked;
+
+    // A null expectedHeader means the read starts past the header, e.g. when resuming from a checkpoint;
+    // columns is the header's width either way. Each key column gets memoryBytes for its keys before it
+    // spills to spillDir.
+    RowValidator(String fileName, String[] expectedHeader, int columns, int[] keyColumns, String[] keyNames,
+                 long memoryBytes, Path spillDir, Path rejectsPath) {
+        this.fileName = fileName;
+        this.expectedHeader = expectedHeader;
+        this.columns = columns;
+        this.keyColumns = keyColumns;
+        this.keyNames = keyNames;
+        this.seen = new UniqueKeys[keyColumns.length];
+        for (int i = 0; i < seen.length; i++) {
+            seen[i] = new UniqueKeys(memoryBytes, spillDir);
+        }
+        this.rejects = new RejectsFile(rejectsPath);
+        this.headerChecked = expectedHeader == null;
+    }
+
+    public void check(CsvRow row) throws IOException {
+        if (!headerChecked) {
+            headerChecked = true;
+            if (!matchesHeader(row)) {
+                throw new InvalidFileException("Headers do not match expected headers in file: " + fileName);
+            }
+            return;
+        }
+        if (row.size() != columns) {
+            throw new InvalidFileException("Expected " + columns + " fields but found " + row.size()
+                    + " at line " + row.lineNumber() + " in file: " + fileName);
+        }
+        for (int i = 0; i < keyColumns.length; i++) {
+            int column = keyColumns[i];
+            if (column >= row.size() || row.isEmpty(column)) {
+                throw new InvalidFileException("Empty " + keyNames[i] + " at line " + row.lineNumber() + " in file: " + fileName);
+            }
+            if (!seen[i].add(row, column)) {
+                duplicate(keyNames[i], row.get(column), row.lineNumber());
+            }
+        }
+    }
+
+    public void finish() throws IOException {
+        if (!headerChecked) {
+            throw new InvalidFileException("File is empty or headers are missing: " + fileName);
+        }
+        for (int i = 0; i < seen.length; i++) {
+            String keyName = keyNames[i];
+            seen[i].finish((key, lineNumber) -> duplicate(keyName, key, lineNumber));
+        }
+        rejects.close();
+        if (rejects.count() > 0) {
+            throw new InvalidFileException(firstDuplicate + " in file: " + fileName
+                    + " (" + rejects.count() + " duplicates, listed in " + rejects.getPath() + ")");
+        }
+    }
+
+    private void duplicate(String keyName, String key, long lineNumber) throws IOException {
+        if (firstDuplicate == null) {
+            firstDuplicate = "Duplicate " + keyName + " " + key + " at line " + lineNumber;
+        }
+        rejects.reject(keyName, key, lineNumber);
+    }
+
+    // Deletes any spilled keys; call it whether or not the read succeeded
+    @Override
+    public void close() throws IOException {
+        rejects.close();
+        for (UniqueKeys keys : seen) {
+            keys.close();
+        }
+    }
+
+    private boolean matchesHeader(CsvRow row) {
+        if (row.size() != expectedHeader.length) {
+            return false;
+        }
+        for (int i = 0; i < expectedHeader.length; i++) {
+            if (!row.fieldEquals(i, expectedHeader[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,224 @@
+package com.imsi_main.validation;
+
+import com.imsi_main.util.BloomFilter;
+import com.imsi_main.util.CsvRow;
+import com.imsi_main.util.LongHashSet;
+import com.imsi_main.util.LongLongHashMap;
+import com.imsi_main.util.NumericCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Set of key values seen in one column, bounded by a memory budget. Numeric keys are
+ * packed into a primitive set; when it is full its keys are sorted and spilled to a run
+ * file and a Bloom filter over everything spilled so far answers whether a new key may
+ * be in one of the runs. Keys the filter may have seen are kept as candidates and looked
+ * up in the runs once, in {@link #finish}, so the runs are read only when there are any.
+ * <p>
+ * Half of the budget goes to the set, a quarter to the filter and a quarter to the
+ * candidates. The filter fills up as more keys are spilled, so on very large files a
+ * growing share of keys become candidates; candidates beyond their quarter are sorted
+ * and spilled too, and each batch is checked against the runs on its own.
+ * <p>
+ * A duplicate of a key still in memory is reported by {@link #add} right away; a
+ * duplicate of a spilled key is only reported by {@link #finish}. Keys that are not
+ * plain digits fall back to a String set, which is not spilled.
+ */
+public class UniqueKeys implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(UniqueKeys.class.getName());
+
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+    // Heap per candidate: a slot of the key to line map at its load factor plus the key list entry
+    private static final int CANDIDATE_BYTES = 48;
+    private static final int MIN_CANDIDATES = 1024;
+
+    public interface DuplicateListener {
+        void duplicate(String key, long lineNumber) throws IOException;
+    }
+
+    private final long bloomBits;
+    private final int maxCandidates;
+    private final Path spillDir;
+    private final LongHashSet numeric;
+    private final Set<String> text = new HashSet<>();
+    private final List<Path> runs = new ArrayList<>();
+    private final List<Path> candidateRuns = new ArrayList<>();
+    private BloomFilter spilled;
+    // Key to line number of keys that may be duplicates of a spilled key
+    private LongLongHashMap candidates = new LongLongHashMap();
+    private long[] candidateKeys = new long[64];
+    private int candidateCount;
+    private long spilledKeys;
+
+    public UniqueKeys(long memoryBytes, Path spillDir) {
+        this.numeric = new LongHashSet(LongHashSet.capacityFor(memoryBytes / 2));
+        this.bloomBits = memoryBytes / 4 * Byte.SIZE;
+        this.maxCandidates = (int) Math.min(Integer.MAX_VALUE / 2, Math.max(MIN_CANDIDATES, memoryBytes / 4 / CANDIDATE_BYTES));
+        this.spillDir = spillDir;
+    }
+
+    // Returns false when the row's key is known to have been seen already
+    public boolean add(CsvRow row, int column) throws IOException {
+        long encoded = row.encodeNumeric(column);
+        if (encoded == NumericCodec.NOT_NUMERIC) {
+            return text.add(row.get(column));
+        }
+        if (!numeric.add(encoded)) {
+            return false;
+        }
+        if (spilled != null && spilled.mightContain(encoded)) {
+            addCandidate(encoded, row.lineNumber());
+        }
+        if (numeric.isFull()) {
+            spill();
+        }
+        return true;
+    }
+
+    public long size() {
+        return spilledKeys + numeric.size() + text.size();
+    }
+
+    private void addCandidate(long key, long lineNumber) throws IOException {
+        if (candidates.putIfAbsent(key, lineNumber) != LongLongHashMap.NO_VALUE) {
+            return;
+        }
+        if (candidateCount == candidateKeys.length) {
+            candidateKeys = Arrays.copyOf(candidateKeys, candidateCount * 2);
+        }
+        candidateKeys[candidateCount++] = key;
+        if (candidateCount >= maxCandidates) {
+            spillCandidates();
+        }
+    }
+
+    private void spill() throws IOException {
+        if (spilled == null) {
+            spilled = new BloomFilter(bloomBits);
+        }
+        int count = numeric.sortInPlace();
+        Path run = Files.createTempFile(spillDir, "keys-run-", ".tmp");
+        runs.add(run);
+        try (DataOutputStream out = output(run)) {
+            for (int i = 0; i < count; i++) {
+                long key = numeric.keyAt(i);
+                out.writeLong(key);
+                spilled.add(key);
+            }
+        }
+        numeric.clear();
+        spilledKeys += count;
+        logger.fine("Spilled " + count + " keys to " + run);
+    }
+
+    // Candidate runs hold key,line pairs sorted by key
+    private void spillCandidates() throws IOException {
+        Arrays.sort(candidateKeys, 0, candidateCount);
+        Path run = Files.createTempFile(spillDir, "candidates-run-", ".tmp");
+        candidateRuns.add(run);
+        try (DataOutputStream out = output(run)) {
+            for (int i = 0; i < candidateCount; i++) {
+                out.writeLong(candidateKeys[i]);
+                out.writeLong(candidates.get(candidateKeys[i]));
+            }
+        }
+        logger.fine("Spilled " + candidateCount + " duplicate key candidates to " + run);
+        candidates = new LongLongHashMap();
+        candidateKeys = new long[64];
+        candidateCount = 0;
+    }
+
+    /**
+     * Reports every candidate that occurs more than once across the runs and the set in
+     * memory. The candidates still in memory are checked first and dropped, then each
+     * candidate run is loaded and checked in turn, so no more than one batch is held.
+     */
+    public void finish(DuplicateListener listener) throws IOException {
+        if (candidateCount > 0) {
+            long[] keys = Arrays.copyOf(candidateKeys, candidateCount);
+            Arrays.sort(keys);
+            long[] lines = new long[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                lines[i] = candidates.get(keys[i]);
+            }
+            candidates = new LongLongHashMap();
+            candidateKeys = new long[64];
+            candidateCount = 0;
+            report(keys, lines, listener);
+        }
+        for (Path candidateRun : candidateRuns) {
+            int count = (int) (Files.size(candidateRun) / (2 * Long.BYTES));
+            long[] keys = new long[count];
+            long[] lines = new long[count];
+            try (DataInputStream in = input(candidateRun)) {
+                for (int i = 0; i < count; i++) {
+                    keys[i] = in.readLong();
+                    lines[i] = in.readLong();
+                }
+            }
+            report(keys, lines, listener);
+        }
+    }
+
+    // Each run holds a key at most once and is sorted, so one merge of the sorted keys with each run counts the occurrences
+    private void report(long[] keys, long[] lines, DuplicateListener listener) throws IOException {
+        int[] counts = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            counts[i] = numeric.contains(keys[i]) ? 1 : 0;
+        }
+        for (Path run : runs) {
+            try (DataInputStream in = input(run)) {
+                int next = 0;
+                for (long remaining = Files.size(run) / Long.BYTES; remaining > 0 && next < keys.length; remaining--) {
+                    long key = in.readLong();
+                    while (next < keys.length && keys[next] < key) {
+                        next++;
+                    }
+                    if (next < keys.length && keys[next] == key) {
+                        counts[next++]++;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (counts[i] > 1) {
+                listener.duplicate(NumericCodec.decode(keys[i]), lines[i]);
+            }
+        }
+    }
+
+    private static DataOutputStream output(Path file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), IO_BUFFER_SIZE));
+    }
+
+    private static DataInputStream input(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), IO_BUFFER_SIZE));
+    }
+
+    // Deletes the run files
+    @Override
+    public void close() throws IOException {
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        for (Path run : candidateRuns) {
+            Files.deleteIfExists(run);
+        }
+        runs.clear();
+        candidateRuns.clear();
+    }
+}